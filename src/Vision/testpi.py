@@ -335,12 +335,17 @@ if __name__ == "__main__":
     frame = np.zeros(shape=(height, width, 3), dtype=np.uint8)
 
     goalFinder = gripV2()
+    frameNumber = 0
 
     # loop forever
     #BIG LOOP!!!!!!!!
     while True:
     # capture image
         cvSink.grabFrame(frame)
+        captureTime = time.monotonic()
+        frameNumber += 1
+        found = False
+        correction = 0.0
         # cv2.waitKey(1)
 
         width = frame.shape[1]
@@ -367,12 +372,21 @@ if __name__ == "__main__":
                 table.putBoolean("Vision Found", True)
                 rectangleMidpoint = (int((bestPair[1][0][0] + bestPair[0][0][0]) / 2), int(
                     (bestPair[1][0][1] + bestPair[0][0][1]) / 2))
-                table.putNumber("Vision Correction",
-                                normalizeImage(rectangleMidpoint[0]))
+                found = True
+                correction = normalizeImage(rectangleMidpoint[0])
+                table.putNumber("Vision Correction", correction)
                 cv2.circle(frame, (rectangleMidpoint), 3, (0, 255, 0), -1)
             else:
                 table.putBoolean("Vision Found", False)
         else:
             table.putBoolean("Vision Found", False)
 
+        # One entry per frame so the robot never mixes values from two frames:
+        # found, correction, seconds since capture, frame number
+        table.putNumberArray("Vision Target", [1.0 if found else 0.0, correction,
+                                               time.monotonic() - captureTime, frameNumber])
+        # Send it now instead of on the next 100ms update, so the age above
+        # is close to what the robot sees
+        ntinst.flush()
+
         outputmodeeam.putFrame(frame)
@@ -0,0 +1,43 @@
+package com.mach.LightDrive;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.hal.can.CANJNI;
+
+/**
+ * The CAN calls and clock a LightDriveCAN uses, so they can be replaced when
+ * testing off the robot.
+ */
+interface CanLink
+{
+    CanLink HAL = new CanLink() {
+        @Override
+        public long GetTime() {
+            return RobotController.getFPGATime();
+        }
+
+        @Override
+        public void Send(final int id, final byte[] data, final int period) {
+            CANJNI.FRCNetCommCANSessionMuxSendMessage(id, data, period);
+        }
+
+        @Override
+        public byte[] Receive(final IntBuffer id, final int mask, final ByteBuffer timestamp) {
+            return CANJNI.FRCNetCommCANSessionMuxReceiveMessage(id, mask, timestamp);
+        }
+    };
+
+    /**
+     * @return The time in microseconds.
+     */
+    long GetTime();
+
+    void Send(int id, byte[] data, int period);
+
+    /**
+     * @return The data of the latest message matching the ID and mask. Throws
+     *         CANMessageNotFoundException if there isn't one.
+     */
+    byte[] Receive(IntBuffer id, int mask, ByteBuffer timestamp);
+}
@@ -1,45 +1,66 @@
 package com.mach.LightDrive;
 
+/**
+ * Colors are packed into an int as 0xRRGGBB so they can be passed around and
+ * stored as compile-time constants without allocating or being mutated.
+ */
 public final class Color
 {
-    public short red;
-    public short green;
-    public short blue;
-    public static final Color RED;
-    public static final Color GREEN;
-    public static final Color BLUE;
-    public static final Color TEAL;
-    public static final Color YELLOW;
-    public static final Color PURPLE;
-    public static final Color WHITE;
-    public static final Color OFF;
+    public static final int RED = 0xFF0000;
+    public static final int GREEN = 0x00FF00;
+    public static final int BLUE = 0x0000FF;
+    public static final int TEAL = 0x00FFFF;
+    public static final int YELLOW = 0xFFFF00;
+    public static final int PURPLE = 0xFF00FF;
+    public static final int WHITE = 0xFFFFFF;
+    public static final int OFF = 0x000000;
+    private static final double GAMMA = 2.2;
+    private static final int[] LEVELS;
     
     static {
-        RED = new Color(255, 0, 0);
-        GREEN = new Color(0, 255, 0);
-        BLUE = new Color(0, 0, 255);
-        TEAL = new Color(0, 255, 255);
-        YELLOW = new Color(255, 255, 0);
-        PURPLE = new Color(255, 0, 255);
-        WHITE = new Color(255, 255, 255);
-        OFF = new Color(0, 0, 0);
+        // Brightness level to an 8.8 fixed point multiplier with gamma applied,
+        // full brightness maps to exactly 1.0 so colors pass through unchanged
+        LEVELS = new int[256];
+        for (int level = 0; level < 256; ++level) {
+            LEVELS[level] = (int)Math.round(256.0 * Math.pow(level / 255.0, GAMMA));
+        }
     }
     
-    public Color() {
-        this.red = 0;
-        this.green = 0;
-        this.blue = 0;
+    private Color() {
     }
     
-    public Color(final short r, final short g, final short b) {
-        this.red = r;
-        this.green = g;
-        this.blue = b;
+    public static int Pack(final int r, final int g, final int b) {
+        return (r & 0xFF) << 16 | (g & 0xFF) << 8 | (b & 0xFF);
     }
     
-    public Color(final int r, final int g, final int b) {
-        this.red = (short)r;
-        this.green = (short)g;
-        this.blue = (short)b;
+    public static int Red(final int color) {
+        return color >>> 16 & 0xFF;
+    }
+    
+    public static int Green(final int color) {
+        return color >>> 8 & 0xFF;
+    }
+    
+    public static int Blue(final int color) {
+        return color & 0xFF;
+    }
+    
+    /**
+     * Convert a brightness from 0.0 to 1.0 into a level for {@link #Scale}.
+     */
+    public static int Level(final double brightness) {
+        return Math.max(0, Math.min(255, (int)(brightness * 255.0 + 0.5)));
+    }
+    
+    /**
+     * Scale every channel of a color by a gamma corrected brightness level.
+     *
+     * @param color The packed color.
+     * @param level The brightness level from 0 to 255.
+     * @return The scaled packed color.
+     */
+    public static int Scale(final int color, final int level) {
+        final int m = LEVELS[level & 0xFF];
+        return (Red(color) * m >>> 8) << 16 | (Green(color) * m >>> 8) << 8 | (Blue(color) * m >>> 8);
     }
 }
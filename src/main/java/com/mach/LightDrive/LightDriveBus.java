@@ -0,0 +1,94 @@
+package com.mach.LightDrive;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Owns the CAN I/O for every LightDrive on the bus. Each cycle it sends the
+ * pending frames of all controllers in one pass and polls the status of just
+ * one of them, taking turns, so adding controllers does not add a receive call
+ * per controller per cycle.
+ */
+public final class LightDriveBus
+{
+    private volatile LightDriveCAN[] m_controllers;
+    private int m_nextRx;
+    private Thread m_thread;
+    private volatile boolean m_running;
+    private boolean m_errorReported;
+    
+    public LightDriveBus() {
+        this.m_controllers = new LightDriveCAN[0];
+    }
+    
+    public synchronized void Add(final LightDriveCAN controller) {
+        final LightDriveCAN[] controllers = new LightDriveCAN[this.m_controllers.length + 1];
+        System.arraycopy(this.m_controllers, 0, controllers, 0, this.m_controllers.length);
+        controllers[this.m_controllers.length] = controller;
+        this.m_controllers = controllers;
+    }
+    
+    /**
+     * Start the low priority output thread.
+     *
+     * @param period The cycle period in seconds.
+     */
+    public synchronized void Start(final double period) {
+        if (this.m_thread != null) {
+            return;
+        }
+        final long periodNanos = (long)(period * 1.0E9);
+        this.m_running = true;
+        this.m_thread = new Thread(() -> this.Run(periodNanos), "LightDriveBus");
+        this.m_thread.setDaemon(true);
+        this.m_thread.setPriority(Thread.MIN_PRIORITY);
+        this.m_thread.start();
+    }
+    
+    public synchronized void Stop() {
+        if (this.m_thread == null) {
+            return;
+        }
+        this.m_running = false;
+        this.m_thread.interrupt();
+        this.m_thread = null;
+    }
+    
+    private void Run(final long periodNanos) {
+        long next = System.nanoTime();
+        while (this.m_running) {
+            try {
+                this.Cycle();
+            }
+            catch (RuntimeException ex) {
+                if (!this.m_errorReported) {
+                    DriverStation.reportError("LightDrive output failed: " + ex, false);
+                    this.m_errorReported = true;
+                }
+            }
+            next += periodNanos;
+            final long sleep = next - System.nanoTime();
+            if (sleep <= 0) {
+                next = System.nanoTime();
+                continue;
+            }
+            try {
+                Thread.sleep(sleep / 1000000L, (int)(sleep % 1000000L));
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+    
+    private void Cycle() {
+        final LightDriveCAN[] controllers = this.m_controllers;
+        if (controllers.length == 0) {
+            return;
+        }
+        for (final LightDriveCAN controller : controllers) {
+            controller.Transmit();
+        }
+        this.m_nextRx = (this.m_nextRx + 1) % controllers.length;
+        controllers[this.m_nextRx].Receive();
+    }
+}
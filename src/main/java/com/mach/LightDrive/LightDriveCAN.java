@@ -8,66 +8,149 @@ import edu.wpi.first.hal.util.UncleanStatusException;
 public final class LightDriveCAN
 {
     private static int LD_ADDR;
+    private final int m_addr;
+    private final CanLink m_link;
     private ByteBuffer m_matrix;
-    private RxPacket m_rx;
+    private byte[] m_published;
+    private byte[] m_out;
+    private final Object m_lock;
+    private volatile RxPacket m_rx;
     private boolean m_init;
-    private byte[] rxdata;
-    private static ByteBuffer timestamp;
-    private static ByteBuffer rxid;
+    private ByteBuffer m_timestamp;
+    private IntBuffer m_rxid;
+    private byte[] m_tx;
+    private byte[] m_last;
+    private long[] m_lastTxTime;
+    private volatile long m_keepAlive;
+    private volatile long m_framesSent;
+    private volatile long m_framesSuppressed;
     
     static {
         LightDriveCAN.LD_ADDR = 33882112;
     }
     
     public LightDriveCAN() {
+        this(LightDriveCAN.LD_ADDR);
+    }
+    
+    /**
+     * @param addr The base arbitration ID. Color frames go to addr and addr + 1,
+     *             and status is read from addr + 4.
+     */
+    public LightDriveCAN(final int addr) {
+        this(addr, CanLink.HAL);
+    }
+    
+    LightDriveCAN(final int addr, final CanLink link) {
+        this.m_addr = addr;
+        this.m_link = link;
         this.m_matrix = ByteBuffer.allocate(16);
+        this.m_published = new byte[16];
+        this.m_out = new byte[16];
+        this.m_lock = new Object();
+        this.m_last = new byte[16];
+        this.m_lastTxTime = new long[2];
+        this.m_keepAlive = 1000000L;
         this.m_init = false;
-        this.m_rx = new RxPacket();
-        (LightDriveCAN.timestamp = ByteBuffer.allocateDirect(4)).order(ByteOrder.LITTLE_ENDIAN);
-        (LightDriveCAN.rxid = ByteBuffer.allocateDirect(4)).order(ByteOrder.LITTLE_ENDIAN);
+        this.m_rx = RxPacket.EMPTY;
+        (this.m_timestamp = ByteBuffer.allocateDirect(4)).order(ByteOrder.LITTLE_ENDIAN);
+        this.m_rxid = ByteBuffer.allocateDirect(4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        this.m_tx = new byte[8];
     }
     
-    public LightDriveCAN(final int addr) {
+    /**
+     * Set how often an unchanged frame is re-sent so the controller does not time
+     * out.
+     *
+     * @param seconds The keepalive period in seconds.
+     */
+    public void SetKeepAlive(final double seconds) {
+        this.m_keepAlive = (long)(seconds * 1.0E6);
+    }
+    
+    public long GetFramesSent() {
+        return this.m_framesSent;
     }
     
+    public long GetFramesSuppressed() {
+        return this.m_framesSuppressed;
+    }
+    
+    /**
+     * Publish everything written with SetColor/SetLevel since the last call. The
+     * bus picks up the latest published matrix on its next cycle, so any number of
+     * calls in between are coalesced into one transmit.
+     */
     public void Update() {
-        final byte[] txdata = new byte[8];
-        LightDriveCAN.rxid.putInt(LightDriveCAN.LD_ADDR + 4);
-        LightDriveCAN.rxid.rewind();
+        synchronized (this.m_lock) {
+            System.arraycopy(this.m_matrix.array(), 0, this.m_published, 0, 16);
+        }
+    }
+    
+    void Transmit() {
+        synchronized (this.m_lock) {
+            System.arraycopy(this.m_published, 0, this.m_out, 0, 16);
+        }
+        final long now = this.m_link.GetTime();
         try {
-            this.m_matrix.get(txdata, 0, 8);
-            CANJNI.FRCNetCommCANSessionMuxSendMessage(LightDriveCAN.LD_ADDR, txdata, 100);
-            this.m_matrix.get(txdata, 0, 8);
-            CANJNI.FRCNetCommCANSessionMuxSendMessage(LightDriveCAN.LD_ADDR + 1, txdata, 100);
+            for (int frame = 0; frame < 2; ++frame) {
+                if (this.m_init && !this.FrameChanged(frame) && now - this.m_lastTxTime[frame] < this.m_keepAlive) {
+                    ++this.m_framesSuppressed;
+                    continue;
+                }
+                System.arraycopy(this.m_out, frame * 8, this.m_tx, 0, 8);
+                this.m_link.Send(this.m_addr + frame, this.m_tx, 100);
+                System.arraycopy(this.m_tx, 0, this.m_last, frame * 8, 8);
+                this.m_lastTxTime[frame] = now;
+                ++this.m_framesSent;
+            }
+            this.m_init = true;
         }
         catch (UncleanStatusException ex) {}
-        this.m_matrix.rewind();
+    }
+    
+    void Receive() {
+        // The receive call writes the matched ID back, so reset it every time
+        this.m_rxid.put(0, this.m_addr + 4);
         try {
-            this.rxdata = CANJNI.FRCNetCommCANSessionMuxReceiveMessage(LightDriveCAN.rxid.asIntBuffer(), 536870911, LightDriveCAN.timestamp);
-            if (this.rxdata.length > 7) {
-                this.m_rx.SetBytes(this.rxdata);
+            final byte[] rxdata = this.m_link.Receive(this.m_rxid, 536870911, this.m_timestamp);
+            // Only swap in a new snapshot when the controller reports something new.
+            // This allocates, but readers on other threads hold on to snapshots, so
+            // they can't be reused.
+            if (rxdata.length > 7 && !this.m_rx.Matches(rxdata)) {
+                this.m_rx = new RxPacket(rxdata);
             }
         }
         catch (CANMessageNotFoundException ex2) {}
     }
     
+    private boolean FrameChanged(final int frame) {
+        for (int i = frame * 8; i < frame * 8 + 8; ++i) {
+            if (this.m_out[i] != this.m_last[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     public float GetCurrent(final int ch) {
+        final RxPacket rx = this.m_rx;
         float current = 0.0f;
         switch (ch) {
             case 1: {
-                current = this.m_rx.I1;
+                current = rx.I1;
                 break;
             }
             case 2: {
-                current = this.m_rx.I2;
+                current = rx.I2;
                 break;
             }
             case 3: {
-                current = this.m_rx.I3;
+                current = rx.I3;
                 break;
             }
             case 4: {
-                current = this.m_rx.I4;
+                current = rx.I4;
                 break;
             }
             default: {
@@ -79,7 +162,8 @@ public final class LightDriveCAN
     }
     
     public float GetTotalCurrent() {
-        return (this.m_rx.I1 + this.m_rx.I2 + this.m_rx.I3 + this.m_rx.I4) / 10.0f;
+        final RxPacket rx = this.m_rx;
+        return (rx.I1 + rx.I2 + rx.I3 + rx.I4) / 10.0f;
     }
     
     public float GetVoltage() {
@@ -90,6 +174,10 @@ public final class LightDriveCAN
         return this.m_rx.FW;
     }
     
+    public RxPacket GetSnapshot() {
+        return this.m_rx;
+    }
+    
     public Status GetStatus() {
         return this.m_rx.status;
     }
@@ -98,36 +186,32 @@ public final class LightDriveCAN
         if (ch > 2 || ch < 1) {
             return -1;
         }
-        return (ch > 1) ? (this.m_rx.PWMVals >> 8) : (this.m_rx.PWMVals & 0xFF);
+        final RxPacket rx = this.m_rx;
+        return (ch > 1) ? (rx.PWMVals >> 8) : (rx.PWMVals & 0xFF);
     }
     
-    public void SetColor(int ch, final Color color) {
+    public void SetColor(int ch, final int color) {
         if (ch < 1 || ch > 4) {
             return;
         }
         ch = --ch * 3;
-        this.m_matrix.array()[ch] = (byte)color.green;
-        this.m_matrix.array()[ch + 1] = (byte)color.red;
-        this.m_matrix.array()[ch + 2] = (byte)color.blue;
+        synchronized (this.m_lock) {
+            this.m_matrix.array()[ch] = (byte)Color.Green(color);
+            this.m_matrix.array()[ch + 1] = (byte)Color.Red(color);
+            this.m_matrix.array()[ch + 2] = (byte)Color.Blue(color);
+        }
     }
     
-    public void SetColor(int ch, final Color color, final double brightness) {
-        if (ch < 1 || ch > 4) {
-            return;
-        }
-        color.red *= (short)brightness;
-        color.green *= (short)brightness;
-        color.blue *= (short)brightness;
-        ch = --ch * 3;
-        this.m_matrix.array()[ch] = (byte)color.green;
-        this.m_matrix.array()[ch + 1] = (byte)color.red;
-        this.m_matrix.array()[ch + 2] = (byte)color.blue;
+    public void SetColor(final int ch, final int color, final double brightness) {
+        this.SetColor(ch, Color.Scale(color, Color.Level(brightness)));
     }
     
     public void SetLevel(final int ch, final byte level) {
         if (ch < 1 || ch > 12 || level < 0 || level > 255) {
             return;
         }
-        this.m_matrix.array()[ch] = level;
+        synchronized (this.m_lock) {
+            this.m_matrix.array()[ch] = level;
+        }
     }
 }
@@ -38,14 +38,18 @@ public final class LightDrivePWM
         }
     }
     
-    public void SetColor(int ch, final Color color) {
+    public void SetColor(int ch, final int color) {
         if (ch < 1 || ch > 4) {
             return;
         }
         ch = --ch * 3;
-        this.m_matrix[ch] = color.green;
-        this.m_matrix[ch + 1] = color.red;
-        this.m_matrix[ch + 2] = color.blue;
+        this.m_matrix[ch] = Color.Green(color);
+        this.m_matrix[ch + 1] = Color.Red(color);
+        this.m_matrix[ch + 2] = Color.Blue(color);
+    }
+    
+    public void SetColor(final int ch, final int color, final double brightness) {
+        this.SetColor(ch, Color.Scale(color, Color.Level(brightness)));
     }
     
     public void SetLevel(final int ch, final int level) {
@@ -2,11 +2,15 @@ package com.mach.LightDrive;
 
 public class Status
 {
-    private byte m_raw;
+    private final byte m_raw;
     private mode m_mode;
     
     public Status() {
-        this.m_raw = 0;
+        this((byte)0);
+    }
+    
+    public Status(final byte raw) {
+        this.m_raw = raw;
         this.m_mode = mode.NONE;
     }
     
@@ -25,14 +29,10 @@ public class Status
         return this.m_mode;
     }
     
-    public Byte GetRaw() {
+    public byte GetRaw() {
         return this.m_raw;
     }
     
-    public void SetRaw(final byte raw) {
-        this.m_raw = raw;
-    }
-    
     public enum mode
     {
         NONE("NONE", 0), 
@@ -7,6 +7,7 @@ import com.chopshop166.chopshoplib.controls.ButtonXboxController;
 import edu.wpi.cscore.UsbCamera;
 import edu.wpi.first.cameraserver.CameraServer;
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.PowerDistributionPanel;
 import edu.wpi.first.wpilibj.buttons.POVButton;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.shuffleboard.EventImportance;
@@ -14,6 +15,8 @@ import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.maps.CurrentRobot;
+import frc.robot.power.CurrentBudget;
+import frc.robot.sensors.SensorSnapshot;
 import frc.robot.subsystems.Drive;
 import frc.robot.subsystems.Leds;
 import frc.robot.subsystems.LiftSubsystem;
@@ -31,6 +34,9 @@ import com.chopshop166.chopshoplib.controls.ButtonXboxController.XBoxButton;
  */
 public class Robot extends CommandRobot {
 
+    // Created before the subsystems, which register with them
+    final public static CurrentBudget power = new CurrentBudget(new PowerDistributionPanel(), 200, 9, 7.5, 10);
+    final public static SensorSnapshot sensors = new SensorSnapshot();
     final private RobotMap robotMap = new CurrentRobot();
     final public static ButtonXboxController xBoxCoPilot = new ButtonXboxController(1);
     final private Maflipulator maflipulator = new Maflipulator(robotMap.getMaflipulatorMap());
@@ -55,10 +61,35 @@ public class Robot extends CommandRobot {
     @Override
     public void robotInit() {
         // Initialize OI here
+        maflipulator.setLift(lift);
         SmartDashboard.putData("Good Flip", goodFlip());
         cameraBack = CameraServer.getInstance().startAutomaticCapture(0);
         cameraBack.setResolution(160, 120);
         assignButtons();
+        drive.loadTrajectories();
+        addAutonomousModes();
+        power.start(0.01);
+    }
+
+    @Override
+    public void robotPeriodic() {
+        // Read the sensors before any command or subsystem looks at them
+        sensors.sample();
+        super.robotPeriodic();
+    }
+
+    /**
+     * Add one autonomous mode per path in the deploy folder, which homes the lift
+     * while following the path.
+     */
+    private void addAutonomousModes() {
+        chooser.setDefaultOption("Home Lift", lift.homePos());
+        for (String name : drive.getTrajectoryNames()) {
+            CommandChain mode = new CommandChain("Follow " + name);
+            mode.then(lift.homePos(), drive.followTrajectory(name));
+            chooser.addOption("Path: " + name, mode);
+        }
+        SmartDashboard.putData("Autonomous Mode", chooser);
     }
 
     /**
@@ -72,7 +103,7 @@ public class Robot extends CommandRobot {
      */
     @Override
     public void autonomousInit() {
-        autonomousCommand = lift.homePos();
+        autonomousCommand = chooser.getSelected();
 
         // schedule the autonomous command (example)
         if (autonomousCommand != null) {
@@ -106,7 +137,9 @@ public class Robot extends CommandRobot {
     public Command goodFlip() {
         CommandChain retValue = new CommandChain("Good Flip");
 
-        retValue.then(lift.goToAtLeast(Heights.kLiftFlipHeight)).then(maflipulator.crappyFlip());
+        // The lift and flip move together, with the flip held back only as long
+        // as it would hit the robot
+        retValue.then(lift.goToAtLeast(Heights.kLiftFlipHeight), maflipulator.coordinatedFlip());
         return retValue;
     }
 
@@ -213,6 +246,7 @@ public class Robot extends CommandRobot {
         // xBoxCoPilot.getButton(XBoxButton.A).whenPressed(manipulator.extendArms());
 
         // manipulator.switchTrigger.whileActive(leds.turnOnGreen());
+        manipulator.switchTrigger.whileActive(leds.showGamepiece());
 
         // xBoxCoPilot.getButton(XBoxButton.A).whileHeld(goToLoadingStation());
         // xBoxCoPilot.getButton(XBoxButton.A).whenReleased(stowAndGo());
@@ -0,0 +1,198 @@
+package frc.robot.drive;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.drive.DifferentialDrive;
+import frc.robot.power.CurrentBudget;
+import frc.robot.util.PeriodicLoop;
+import frc.robot.util.SeqLock;
+
+/**
+ * Runs the drive motors on its own Notifier, so the time from an input to the
+ * motors doesn't depend on how long the rest of the scheduler takes.
+ *
+ * <p>
+ * Commands post what they want into a mailbox that the loop reads without
+ * locking, and the loop reads the heading from the odometry snapshot. The loop
+ * is the only thing that writes to the motors. Requests other than driver
+ * control are only good for {@link #DEFAULT_TIMEOUT} seconds, so the drive
+ * stops if the command posting them stops running.
+ *
+ * <p>
+ * Every output is scaled down together to stay within the drive's share of
+ * the current budget, so the robot keeps turning the way it was asked to.
+ */
+public class DriveControlLoop extends PeriodicLoop {
+    public final static double DEFAULT_TIMEOUT = 0.1;
+
+    private final static int MODE_STOP = 0;
+    private final static int MODE_OPEN_LOOP = 1;
+    private final static int MODE_HEADING = 2;
+    private final static int MODE_DRIVER = 3;
+
+    // Mailbox slots
+    private final static int MODE = 0;
+    private final static int FORWARD = 1;
+    private final static int TURN = 2;
+    private final static int SQUARE = 3;
+    private final static int POST_TIME = 4;
+
+    // Limit on the heading integral, in degree seconds
+    private final static double MAX_HEADING_INTEGRAL = 20;
+
+    private final DifferentialDrive drive;
+    private final Odometry odometry;
+    private final CurrentBudget.Consumer power;
+
+    private volatile double headingKP = .024;
+    private volatile double headingKI = .006;
+    private volatile double timeout = DEFAULT_TIMEOUT;
+
+    // Mailbox. Writers are synchronized with each other, the loop never blocks.
+    // The driver inputs are written before the rest is published, so the loop
+    // always sees them once it sees driver mode.
+    private final SeqLock mailbox = new SeqLock(5);
+    private volatile DoubleSupplier forwardInput;
+    private volatile DoubleSupplier turnInput;
+
+    // Only touched by the notifier thread
+    private final double[] pose = new double[4];
+    private int lastMode = MODE_STOP;
+    private double lastTime;
+    private double headingIntegral;
+
+    public DriveControlLoop(final DifferentialDrive drive, final Odometry odometry,
+            final CurrentBudget.Consumer power) {
+        this.drive = drive;
+        this.odometry = odometry;
+        this.power = power;
+    }
+
+    public void setHeadingGains(final double kP, final double kI) {
+        headingKP = kP;
+        headingKI = kI;
+    }
+
+    /**
+     * @param seconds How long a posted request is used before the drive stops.
+     */
+    public void setTimeout(final double seconds) {
+        timeout = seconds;
+    }
+
+    /**
+     * Drive with fixed outputs, the same as {@link DifferentialDrive#arcadeDrive}.
+     * This has to be posted again before it times out.
+     */
+    public void setOpenLoop(final double forward, final double turn, final boolean squareInputs) {
+        post(MODE_OPEN_LOOP, forward, turn, squareInputs, null, null);
+    }
+
+    /**
+     * Drive forward while turning to hold a gyro heading. This has to be posted
+     * again before it times out.
+     *
+     * @param forward The forward output, not squared.
+     * @param heading The gyro angle to hold in degrees.
+     */
+    public void setHeading(final double forward, final double heading) {
+        post(MODE_HEADING, forward, heading, false, null, null);
+    }
+
+    /**
+     * Drive from the driver's inputs, read by the loop every period and used
+     * without squaring, so they should already be shaped. This lasts until
+     * something else is posted.
+     */
+    public void setDriver(final DoubleSupplier forwardInput, final DoubleSupplier turnInput) {
+        post(MODE_DRIVER, 0, 0, false, forwardInput, turnInput);
+    }
+
+    public void stopMotor() {
+        post(MODE_STOP, 0, 0, false, null, null);
+    }
+
+    private synchronized void post(final int mode, final double forward, final double turn,
+            final boolean squareInputs, final DoubleSupplier forwardInput, final DoubleSupplier turnInput) {
+        if (forwardInput != null) {
+            this.forwardInput = forwardInput;
+            this.turnInput = turnInput;
+        }
+        mailbox.beginWrite();
+        mailbox.set(MODE, mode);
+        mailbox.set(FORWARD, forward);
+        mailbox.set(TURN, turn);
+        mailbox.set(SQUARE, squareInputs ? 1 : 0);
+        mailbox.set(POST_TIME, Timer.getFPGATimestamp());
+        mailbox.endWrite();
+    }
+
+    @Override
+    protected void update() {
+        final double now = Timer.getFPGATimestamp();
+
+        int m;
+        double f;
+        double t;
+        boolean square;
+        double posted;
+        int s;
+        do {
+            s = mailbox.readBegin();
+            m = (int) mailbox.get(MODE);
+            f = mailbox.get(FORWARD);
+            t = mailbox.get(TURN);
+            square = mailbox.get(SQUARE) != 0;
+            posted = mailbox.get(POST_TIME);
+        } while (mailbox.readRetry(s));
+
+        if (m != MODE_DRIVER && m != MODE_STOP && now - posted > timeout) {
+            m = MODE_STOP;
+        }
+        if (m != lastMode) {
+            headingIntegral = 0;
+        }
+
+        switch (m) {
+        case MODE_OPEN_LOOP:
+            arcadeDrive(f, t, square);
+            break;
+        case MODE_HEADING:
+            odometry.getPose(pose);
+            final double error = t - pose[2];
+            if (lastMode == MODE_HEADING) {
+                headingIntegral += error * (now - lastTime);
+                headingIntegral = Math.max(-MAX_HEADING_INTEGRAL, Math.min(MAX_HEADING_INTEGRAL, headingIntegral));
+            }
+            arcadeDrive(f, headingKP * error + headingKI * headingIntegral, false);
+            break;
+        case MODE_DRIVER:
+            arcadeDrive(forwardInput.getAsDouble(), turnInput.getAsDouble(), square);
+            break;
+        default:
+            power.limit(0);
+            drive.stopMotor();
+            break;
+        }
+        lastMode = m;
+        lastTime = now;
+    }
+
+    private void arcadeDrive(double forward, double turn, final boolean squareInputs) {
+        if (squareInputs) {
+            forward = Math.copySign(forward * forward, forward);
+            turn = Math.copySign(turn * turn, turn);
+        }
+        // The fastest wheel's output is what draws the current
+        final double output = Math.min(1, Math.abs(forward) + Math.abs(turn));
+        if (output > 0) {
+            final double scale = Math.abs(power.limit(output)) / output;
+            forward *= scale;
+            turn *= scale;
+        } else {
+            power.limit(0);
+        }
+        drive.arcadeDrive(forward, turn, false);
+    }
+}
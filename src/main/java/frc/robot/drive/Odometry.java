@@ -0,0 +1,109 @@
+package frc.robot.drive;
+
+import com.chopshop166.chopshoplib.sensors.PIDGyro;
+
+import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.util.PeriodicLoop;
+import frc.robot.util.SeqLock;
+import frc.robot.util.TimeHistory;
+
+/**
+ * Integrates the drive encoders and gyro into a field pose on its own
+ * Notifier. X is forward and Y is to the left of where the robot was when it
+ * was last reset, in encoder distance units. Heading is the gyro angle in
+ * degrees, clockwise positive.
+ *
+ * <p>
+ * The current pose can be read from any thread without locking. A short
+ * history of the heading is kept so vision frames can be matched to where the
+ * robot was pointing when they were captured.
+ */
+public class Odometry extends PeriodicLoop {
+    private final static int HISTORY_SIZE = 200;
+
+    private final Encoder leftEncoder;
+    private final Encoder rightEncoder;
+    private final PIDGyro gyro;
+
+    private final TimeHistory headingHistory = new TimeHistory(HISTORY_SIZE);
+
+    // Only touched by the notifier thread
+    private double lastLeft;
+    private double lastRight;
+    private double lastHeading;
+    private double x;
+    private double y;
+
+    // Published x, y, heading and time, in the order getPose() returns them
+    private final SeqLock pose = new SeqLock(4);
+
+    private volatile boolean resetRequested = true;
+
+    public Odometry(final Encoder leftEncoder, final Encoder rightEncoder, final PIDGyro gyro) {
+        this.leftEncoder = leftEncoder;
+        this.rightEncoder = rightEncoder;
+        this.gyro = gyro;
+    }
+
+    /**
+     * Make the current position the origin on the next update. The heading stays
+     * the gyro angle.
+     */
+    public void reset() {
+        resetRequested = true;
+    }
+
+    @Override
+    protected void update() {
+        final double now = Timer.getFPGATimestamp();
+        final double left = leftEncoder.getDistance();
+        final double right = rightEncoder.getDistance();
+        final double heading = gyro.getAngle();
+
+        if (resetRequested) {
+            resetRequested = false;
+            x = 0;
+            y = 0;
+            headingHistory.clear();
+        } else {
+            final double distance = ((left - lastLeft) + (right - lastRight)) / 2;
+            // Integrate along the average heading over the step, converted from
+            // clockwise degrees to counter-clockwise radians
+            final double theta = -Math.toRadians((heading + lastHeading) / 2);
+            x += distance * Math.cos(theta);
+            y += distance * Math.sin(theta);
+        }
+        lastLeft = left;
+        lastRight = right;
+        lastHeading = heading;
+
+        pose.beginWrite();
+        pose.set(0, x);
+        pose.set(1, y);
+        pose.set(2, heading);
+        pose.set(3, now);
+        pose.endWrite();
+
+        headingHistory.add(now, heading);
+    }
+
+    /**
+     * Read the latest pose without locking.
+     *
+     * @param pose An array of at least 4 elements to fill with x, y, heading and
+     *             the FPGA timestamp of the update.
+     */
+    public void getPose(final double[] pose) {
+        this.pose.read(pose);
+    }
+
+    /**
+     * Look up the heading at a past time, interpolated between updates.
+     *
+     * @param time The FPGA timestamp in seconds.
+     */
+    public double getHeadingAt(final double time) {
+        return headingHistory.getAt(time);
+    }
+}
@@ -0,0 +1,141 @@
+package frc.robot.drive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import frc.robot.util.NumericCsv;
+
+/**
+ * A precomputed, time-parameterized drive path. Each step has a time, the
+ * distance along the path, velocity, acceleration and the heading relative to
+ * the heading the path started at, all in the drive's distance units per second
+ * and gyro degrees.
+ */
+public class Trajectory {
+    public final static int TIME = 0;
+    public final static int POSITION = 1;
+    public final static int VELOCITY = 2;
+    public final static int ACCELERATION = 3;
+    public final static int HEADING = 4;
+    public final static int FIELDS = 5;
+
+    public final static Trajectory EMPTY = new Trajectory(new double[0], new double[0], new double[0], new double[0],
+            new double[0]);
+
+    private final double[] time;
+    private final double[] position;
+    private final double[] velocity;
+    private final double[] acceleration;
+    private final double[] heading;
+
+    public Trajectory(final double[] time, final double[] position, final double[] velocity,
+            final double[] acceleration, final double[] heading) {
+        this.time = time;
+        this.position = position;
+        this.velocity = velocity;
+        this.acceleration = acceleration;
+        this.heading = heading;
+    }
+
+    double[] column(final int field) {
+        switch (field) {
+        case TIME:
+            return time;
+        case POSITION:
+            return position;
+        case VELOCITY:
+            return velocity;
+        case ACCELERATION:
+            return acceleration;
+        case HEADING:
+            return heading;
+        default:
+            throw new IllegalArgumentException("No trajectory field " + field);
+        }
+    }
+
+    public int length() {
+        return time.length;
+    }
+
+    public double getDuration() {
+        return time.length == 0 ? 0 : time[time.length - 1];
+    }
+
+    public double getEndPosition() {
+        return position.length == 0 ? 0 : position[position.length - 1];
+    }
+
+    /**
+     * Get the setpoint at a time since the path started, interpolating between
+     * steps. Times past the end hold the last step with zero velocity and
+     * acceleration.
+     *
+     * @param t     Seconds since the start of the path.
+     * @param state An array of at least {@link #FIELDS} elements to fill.
+     */
+    public void sample(final double t, final double[] state) {
+        state[TIME] = t;
+        if (time.length == 0) {
+            state[POSITION] = 0;
+            state[VELOCITY] = 0;
+            state[ACCELERATION] = 0;
+            state[HEADING] = 0;
+            return;
+        }
+        final int last = time.length - 1;
+        if (t >= time[last]) {
+            state[POSITION] = position[last];
+            state[VELOCITY] = 0;
+            state[ACCELERATION] = 0;
+            state[HEADING] = heading[last];
+            return;
+        }
+        if (t <= time[0]) {
+            state[POSITION] = position[0];
+            state[VELOCITY] = velocity[0];
+            state[ACCELERATION] = acceleration[0];
+            state[HEADING] = heading[0];
+            return;
+        }
+        // Find the last step at or before t
+        int low = 0;
+        int high = last;
+        while (high - low > 1) {
+            final int mid = (low + high) >>> 1;
+            if (time[mid] <= t) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        final double fraction = (t - time[low]) / (time[high] - time[low]);
+        state[POSITION] = lerp(position, low, high, fraction);
+        state[VELOCITY] = lerp(velocity, low, high, fraction);
+        state[ACCELERATION] = lerp(acceleration, low, high, fraction);
+        state[HEADING] = lerp(heading, low, high, fraction);
+    }
+
+    private static double lerp(final double[] values, final int low, final int high, final double fraction) {
+        return values[low] + (values[high] - values[low]) * fraction;
+    }
+
+    /**
+     * Read a path from a CSV file with one step per line as time, position,
+     * velocity, acceleration, heading, in the format {@link NumericCsv} reads.
+     */
+    public static Trajectory fromCsv(final Path file) throws IOException {
+        final List<double[]> steps = NumericCsv.read(file, FIELDS);
+
+        final int count = steps.size();
+        final double[][] columns = new double[FIELDS][count];
+        for (int i = 0; i < count; i++) {
+            for (int field = 0; field < FIELDS; field++) {
+                columns[field][i] = steps.get(i)[field];
+            }
+        }
+        return new Trajectory(columns[TIME], columns[POSITION], columns[VELOCITY], columns[ACCELERATION],
+                columns[HEADING]);
+    }
+}
@@ -0,0 +1,117 @@
+package frc.robot.drive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary trajectory files, so paths can be memory mapped at startup instead of
+ * parsed on the roboRIO.
+ *
+ * <p>
+ * Everything is little-endian. The 16 byte header is the magic number
+ * {@link #MAGIC}, a short format version, a short of flags, the number of steps
+ * and the number of fields per step. It is followed by one packed array per
+ * field (time, position, velocity, acceleration, heading), each holding one
+ * value per step as a double, or as a float if {@link #FLAG_FLOAT} is set.
+ */
+public final class TrajectoryFile {
+    // "TRAJ" when read as bytes
+    public final static int MAGIC = 0x4A415254;
+    public final static short VERSION = 1;
+    public final static short FLAG_FLOAT = 0x1;
+    public final static int HEADER_SIZE = 16;
+    public final static String EXTENSION = ".traj";
+
+    private TrajectoryFile() {
+    }
+
+    public static Trajectory read(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(mapped, file.toString());
+        }
+    }
+
+    static Trajectory decode(final ByteBuffer data, final String name) throws IOException {
+        final ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException(name + " is too short to be a trajectory");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(name + " is not a trajectory file");
+        }
+        final short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException(name + " has unsupported version " + version);
+        }
+        final boolean singlePrecision = (buffer.getShort() & FLAG_FLOAT) != 0;
+        final int count = buffer.getInt();
+        final int fields = buffer.getInt();
+        if (count < 0 || fields != Trajectory.FIELDS) {
+            throw new IOException(name + " has a bad header");
+        }
+        final long expected = HEADER_SIZE + (long) count * fields * (singlePrecision ? Float.BYTES : Double.BYTES);
+        if (data.remaining() != expected) {
+            throw new IOException(name + " should be " + expected + " bytes but is " + data.remaining());
+        }
+
+        final ByteBuffer body = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        final double[][] columns = new double[fields][count];
+        if (singlePrecision) {
+            final FloatBuffer values = body.asFloatBuffer();
+            for (final double[] column : columns) {
+                for (int i = 0; i < count; i++) {
+                    column[i] = values.get();
+                }
+            }
+        } else {
+            final DoubleBuffer values = body.asDoubleBuffer();
+            for (final double[] column : columns) {
+                values.get(column);
+            }
+        }
+        return new Trajectory(columns[Trajectory.TIME], columns[Trajectory.POSITION], columns[Trajectory.VELOCITY],
+                columns[Trajectory.ACCELERATION], columns[Trajectory.HEADING]);
+    }
+
+    public static ByteBuffer encode(final Trajectory trajectory, final boolean singlePrecision) {
+        final int count = trajectory.length();
+        final int size = HEADER_SIZE + count * Trajectory.FIELDS * (singlePrecision ? Float.BYTES : Double.BYTES);
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort(singlePrecision ? FLAG_FLOAT : 0);
+        buffer.putInt(count);
+        buffer.putInt(Trajectory.FIELDS);
+        for (int field = 0; field < Trajectory.FIELDS; field++) {
+            final double[] column = trajectory.column(field);
+            for (int i = 0; i < count; i++) {
+                if (singlePrecision) {
+                    buffer.putFloat((float) column[i]);
+                } else {
+                    buffer.putDouble(column[i]);
+                }
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public static void write(final Trajectory trajectory, final Path file, final boolean singlePrecision)
+            throws IOException {
+        final ByteBuffer buffer = encode(trajectory, singlePrecision);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package frc.robot.drive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Desktop tool for trajectory files. Run it with
+ * {@code ./gradlew trajectoryTool --args="..."}.
+ *
+ * <ul>
+ * <li>{@code encode <in.csv> <out.traj> [--float]} converts a CSV path into the
+ * binary format.</li>
+ * <li>{@code verify <file.traj> [source.csv]} checks that a binary path is well
+ * formed, and optionally that it matches the CSV it was made from.</li>
+ * </ul>
+ */
+public final class TrajectoryTool {
+    // Single precision files are compared against their source with this
+    // relative tolerance
+    private final static double FLOAT_TOLERANCE = 1e-6;
+
+    private TrajectoryTool() {
+    }
+
+    public static void main(final String... args) {
+        try {
+            if (args.length >= 3 && "encode".equals(args[0])) {
+                final boolean singlePrecision = args.length > 3 && "--float".equals(args[3]);
+                final Trajectory trajectory = Trajectory.fromCsv(Paths.get(args[1]));
+                TrajectoryFile.write(trajectory, Paths.get(args[2]), singlePrecision);
+                System.out.println("Wrote " + trajectory.length() + " steps to " + args[2]);
+            } else if (args.length >= 2 && "verify".equals(args[0])) {
+                final Path source = args.length > 2 ? Paths.get(args[2]) : null;
+                if (!verify(Paths.get(args[1]), source)) {
+                    System.exit(1);
+                }
+            } else {
+                System.err.println("Usage: encode <in.csv> <out.traj> [--float]");
+                System.err.println("       verify <file.traj> [source.csv]");
+                System.exit(2);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static boolean verify(final Path file, final Path source) throws IOException {
+        final Trajectory trajectory = TrajectoryFile.read(file);
+        boolean ok = true;
+        final double[] time = trajectory.column(Trajectory.TIME);
+        for (int i = 0; i < trajectory.length(); i++) {
+            for (int field = 0; field < Trajectory.FIELDS; field++) {
+                if (!Double.isFinite(trajectory.column(field)[i])) {
+                    System.err.println("Step " + i + " has a non-finite value in field " + field);
+                    ok = false;
+                }
+            }
+            if (i > 0 && time[i] <= time[i - 1]) {
+                System.err.println("Step " + i + " does not move forward in time");
+                ok = false;
+            }
+        }
+
+        if (source != null) {
+            final Trajectory expected = Trajectory.fromCsv(source);
+            if (expected.length() != trajectory.length()) {
+                System.err.println("Expected " + expected.length() + " steps from " + source + " but found "
+                        + trajectory.length());
+                ok = false;
+            } else {
+                for (int field = 0; field < Trajectory.FIELDS; field++) {
+                    for (int i = 0; i < trajectory.length(); i++) {
+                        final double want = expected.column(field)[i];
+                        final double got = trajectory.column(field)[i];
+                        if (Math.abs(want - got) > FLOAT_TOLERANCE * Math.max(1, Math.abs(want))) {
+                            System.err.println("Step " + i + " field " + field + " is " + got + ", expected " + want);
+                            ok = false;
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println(file + ": " + trajectory.length() + " steps, " + trajectory.getDuration() + " s, "
+                + trajectory.getEndPosition() + " distance, " + (ok ? "OK" : "FAILED"));
+        return ok;
+    }
+}
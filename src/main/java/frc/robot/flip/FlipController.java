@@ -0,0 +1,195 @@
+package frc.robot.flip;
+
+import edu.wpi.first.wpilibj.SpeedController;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.sensors.AngleEstimator;
+import frc.robot.util.PeriodicLoop;
+import frc.robot.util.SeqLock;
+import frc.robot.util.TrapezoidProfile;
+
+/**
+ * Runs the Maflipulator's flip motor on one Notifier, which also updates the
+ * angle estimate, so there is a single thread for the one motor.
+ *
+ * <p>
+ * Commands post either an open loop output, which has to be posted again
+ * before {@link #TIMEOUT} seconds pass, or a target angle. A target is reached
+ * along a trapezoidal profile from wherever the arm is, across vertical if
+ * needed, with gravity feedforward that changes sign with the side of vertical
+ * the arm is on. Angles are in pot units, and a positive output lowers the
+ * angle.
+ */
+public class FlipController extends PeriodicLoop {
+    public final static double TIMEOUT = 0.1;
+
+    private final static int MODE_OFF = 0;
+    private final static int MODE_OPEN_LOOP = 1;
+    private final static int MODE_POSITION = 2;
+
+    // Mailbox slots
+    private final static int MODE = 0;
+    private final static int VALUE = 1;
+    private final static int POST_TIME = 2;
+
+    // Profile limits in pot units per second and per second squared
+    private final static double MAX_VELOCITY = 1.5;
+    private final static double MAX_ACCELERATION = 4;
+    // Output per unit/s, unit/s^2 and unit of error
+    private final static double KV = 0.6;
+    private final static double KA = 0.05;
+    private final static double KP = 3;
+    // Output that holds the arm level against gravity
+    private final static double KG = 0.15;
+    // The pot covers about 270 degrees
+    private final static double RADIANS_PER_UNIT = 1.5 * Math.PI;
+    private final static double POSITION_TOLERANCE = 0.02;
+    private final static double VELOCITY_TOLERANCE = 0.1;
+
+    private final SpeedController motor;
+    private final AngleEstimator estimator;
+    private final double verticalAngle;
+    private final double minAngle;
+    private final double maxAngle;
+
+    // Mailbox, writers are synchronized with each other
+    private final SeqLock mailbox = new SeqLock(3);
+
+    // State handed back to commands, as the sequence number of the target the
+    // arm last settled at
+    private volatile int targetSequence = -1;
+    private volatile int settledSequence = -1;
+    private volatile boolean holding;
+
+    // Only touched by the notifier thread
+    private final double[] state = new double[2];
+    private final double[] setpoint = new double[3];
+    private int lastSequence = -1;
+    private TrapezoidProfile profile;
+    private double profileStart;
+
+    /**
+     * @param motor         The flip motor.
+     * @param estimator     The angle estimate, which this takes over updating.
+     * @param verticalAngle The angle where the arm is straight up.
+     * @param minAngle      The lowest target angle allowed.
+     * @param maxAngle      The highest target angle allowed.
+     */
+    public FlipController(final SpeedController motor, final AngleEstimator estimator, final double verticalAngle,
+            final double minAngle, final double maxAngle) {
+        this.motor = motor;
+        this.estimator = estimator;
+        this.verticalAngle = verticalAngle;
+        this.minAngle = minAngle;
+        this.maxAngle = maxAngle;
+    }
+
+    /**
+     * Drive the motor directly. This has to be posted again before it times
+     * out.
+     */
+    public void setOutput(final double output) {
+        holding = false;
+        post(MODE_OPEN_LOOP, output);
+    }
+
+    /**
+     * Move to and hold an angle until something else is posted.
+     */
+    public void setTarget(final double angle) {
+        holding = true;
+        targetSequence = post(MODE_POSITION, Math.max(minAngle, Math.min(maxAngle, angle)));
+    }
+
+    /**
+     * The profile a move to an angle from the current estimate would follow.
+     */
+    public TrapezoidProfile planMove(final double angle) {
+        final double[] current = new double[2];
+        estimator.getEstimate(current);
+        return planMove(current, angle);
+    }
+
+    private TrapezoidProfile planMove(final double[] current, final double angle) {
+        return new TrapezoidProfile(MAX_VELOCITY, MAX_ACCELERATION, current[AngleEstimator.ANGLE],
+                current[AngleEstimator.VELOCITY], Math.max(minAngle, Math.min(maxAngle, angle)));
+    }
+
+    public void disable() {
+        holding = false;
+        post(MODE_OFF, 0);
+    }
+
+    /**
+     * Whether a target angle was the last thing posted, so the arm is moving to
+     * or holding it.
+     */
+    public boolean isHolding() {
+        return holding;
+    }
+
+    /**
+     * Whether the last target has been reached and the arm has settled there.
+     */
+    public boolean isAtTarget() {
+        return settledSequence == targetSequence;
+    }
+
+    private synchronized int post(final int mode, final double value) {
+        mailbox.beginWrite();
+        mailbox.set(MODE, mode);
+        mailbox.set(VALUE, value);
+        mailbox.set(POST_TIME, Timer.getFPGATimestamp());
+        return mailbox.endWrite();
+    }
+
+    @Override
+    protected void update() {
+        estimator.update();
+        final double now = Timer.getFPGATimestamp();
+
+        int m;
+        double v;
+        double posted;
+        int s;
+        do {
+            s = mailbox.readBegin();
+            m = (int) mailbox.get(MODE);
+            v = mailbox.get(VALUE);
+            posted = mailbox.get(POST_TIME);
+        } while (mailbox.readRetry(s));
+
+        switch (m) {
+        case MODE_OPEN_LOOP:
+            motor.set(now - posted > TIMEOUT ? 0 : v);
+            break;
+        case MODE_POSITION:
+            estimator.getEstimate(state);
+            final double angle = state[AngleEstimator.ANGLE];
+            final double velocity = state[AngleEstimator.VELOCITY];
+            if (s != lastSequence) {
+                profile = planMove(state, v);
+                profileStart = now;
+            }
+            final double elapsed = now - profileStart;
+            profile.sample(elapsed, setpoint);
+
+            // Gravity pulls the arm away from vertical, so the output holding it
+            // up flips sign when it crosses over to the other side
+            final double gravity = KG * Math.sin((angle - verticalAngle) * RADIANS_PER_UNIT);
+            final double output = gravity - (KV * setpoint[TrapezoidProfile.VELOCITY]
+                    + KA * setpoint[TrapezoidProfile.ACCELERATION]
+                    + KP * (setpoint[TrapezoidProfile.POSITION] - angle));
+            motor.set(Math.max(-1, Math.min(1, output)));
+
+            if (elapsed >= profile.getDuration() && Math.abs(v - angle) < POSITION_TOLERANCE
+                    && Math.abs(velocity) < VELOCITY_TOLERANCE) {
+                settledSequence = s;
+            }
+            break;
+        default:
+            motor.set(0);
+            break;
+        }
+        lastSequence = s;
+    }
+}
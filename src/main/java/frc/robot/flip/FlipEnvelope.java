@@ -0,0 +1,102 @@
+package frc.robot.flip;
+
+import java.util.function.DoubleUnaryOperator;
+
+import frc.robot.util.TrapezoidProfile;
+
+/**
+ * The lowest lift height at which each flip angle is clear of the robot, so
+ * the lift and flip can move together instead of one after the other.
+ *
+ * <p>
+ * The table is given as a few angles and heights, interpolated linearly and
+ * held at the end values outside them, then precomputed into evenly spaced
+ * bins over the pot's range. Each bin holds the highest height anywhere in it,
+ * so a lookup never comes out lower than the table.
+ */
+public class FlipEnvelope {
+    private final double minAngle;
+    private final double binWidth;
+    private final double[] minHeights;
+
+    // Only used from the main robot thread
+    private final double[] flipSetpoint = new double[3];
+
+    /**
+     * @param angles   The angles of the table, in increasing order.
+     * @param heights  The lowest safe lift height at each angle.
+     * @param minAngle The lowest angle to build bins for.
+     * @param maxAngle The highest angle to build bins for.
+     * @param bins     How many bins to split the range into.
+     */
+    public FlipEnvelope(final double[] angles, final double[] heights, final double minAngle, final double maxAngle,
+            final int bins) {
+        if (angles.length == 0 || angles.length != heights.length) {
+            throw new IllegalArgumentException("A flip envelope needs one height per angle");
+        }
+        for (int i = 1; i < angles.length; i++) {
+            if (angles[i] <= angles[i - 1]) {
+                throw new IllegalArgumentException("Flip envelope angles must be in increasing order");
+            }
+        }
+        this.minAngle = minAngle;
+        binWidth = (maxAngle - minAngle) / bins;
+        minHeights = new double[bins];
+        for (int bin = 0; bin < bins; bin++) {
+            final double low = minAngle + bin * binWidth;
+            final double high = low + binWidth;
+            // The table is piecewise linear, so its highest point in a bin is at
+            // one of the bin's edges or a table angle inside it
+            double highest = Math.max(interpolate(angles, heights, low), interpolate(angles, heights, high));
+            for (int i = 0; i < angles.length; i++) {
+                if (angles[i] > low && angles[i] < high) {
+                    highest = Math.max(highest, heights[i]);
+                }
+            }
+            minHeights[bin] = highest;
+        }
+    }
+
+    private static double interpolate(final double[] angles, final double[] heights, final double angle) {
+        final int last = angles.length - 1;
+        if (angle <= angles[0]) {
+            return heights[0];
+        }
+        if (angle >= angles[last]) {
+            return heights[last];
+        }
+        int high = 1;
+        while (angles[high] < angle) {
+            high++;
+        }
+        final int low = high - 1;
+        return heights[low] + (heights[high] - heights[low]) * (angle - angles[low]) / (angles[high] - angles[low]);
+    }
+
+    /**
+     * @return The lowest lift height that clears the robot at an angle.
+     */
+    public double getMinHeight(final double angle) {
+        final int bin = (int) ((angle - minAngle) / binWidth);
+        return minHeights[Math.max(0, Math.min(minHeights.length - 1, bin))];
+    }
+
+    /**
+     * Check whether starting a flip now keeps it clear the whole way.
+     *
+     * @param liftHeight The lowest height the lift is committed to at a time in
+     *                   seconds from now.
+     * @param flip       The move the flip would make.
+     * @param step       The time between checks along the move, in seconds.
+     */
+    public boolean isClear(final DoubleUnaryOperator liftHeight, final TrapezoidProfile flip, final double step) {
+        final double duration = flip.getDuration();
+        for (double t = 0; t < duration + step; t += step) {
+            flip.sample(t, flipSetpoint);
+            if (liftHeight.applyAsDouble(t) < getMinHeight(flipSetpoint[TrapezoidProfile.POSITION])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
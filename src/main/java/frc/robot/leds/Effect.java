@@ -0,0 +1,51 @@
+package frc.robot.leds;
+
+import com.mach.LightDrive.Color;
+
+/**
+ * An LED effect is a waveform evaluated from the FPGA timestamp, so it looks
+ * the same no matter how often or how late it gets rendered.
+ */
+@FunctionalInterface
+public interface Effect {
+
+    /**
+     * Get the color of a bank at a point in time.
+     *
+     * @param time The FPGA timestamp in seconds.
+     * @param bank The LightDrive bank being rendered.
+     * @return The packed color for the bank.
+     */
+    int render(double time, int bank);
+
+    /**
+     * Where in the current cycle of a periodic effect we are, from 0 to 1.
+     */
+    static double phase(final double time, final double frequency) {
+        final double cycles = time * frequency;
+        return cycles - Math.floor(cycles);
+    }
+
+    /**
+     * A smooth brightness from 0 to 1 and back once per cycle.
+     */
+    static double breatheLevel(final double time, final double frequency) {
+        return 0.5 - 0.5 * Math.cos(2 * Math.PI * phase(time, frequency));
+    }
+
+    static int blend(final int from, final int to, final double amount) {
+        final int weight = Color.Level(amount);
+        final int inverse = 255 - weight;
+        return Color.Pack((Color.Red(from) * inverse + Color.Red(to) * weight) / 255,
+                (Color.Green(from) * inverse + Color.Green(to) * weight) / 255,
+                (Color.Blue(from) * inverse + Color.Blue(to) * weight) / 255);
+    }
+
+    static Effect solid(final int color) {
+        return (time, bank) -> color;
+    }
+
+    static Effect blink(final int color, final double frequency) {
+        return (time, bank) -> phase(time, frequency) < 0.5 ? color : Color.OFF;
+    }
+}
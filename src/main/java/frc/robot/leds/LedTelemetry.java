@@ -0,0 +1,109 @@
+package frc.robot.leds;
+
+import com.mach.LightDrive.LightDriveCAN;
+import com.mach.LightDrive.RxPacket;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.util.RingBuffer;
+
+/**
+ * Records the currents and voltage a LightDrive reports into ring buffers every
+ * loop, and only publishes the rolling statistics to NetworkTables every few
+ * samples.
+ */
+public class LedTelemetry {
+    private final static int CHANNELS = 4;
+
+    private final LightDriveCAN lightDrive;
+    private final int publishEvery;
+    private final RingBuffer[] channelCurrent = new RingBuffer[CHANNELS];
+    private final RingBuffer totalCurrent;
+    private final RingBuffer voltage;
+    private int samplesSincePublish;
+    private int lastTripped;
+
+    private final NetworkTableEntry[] channelMean = new NetworkTableEntry[CHANNELS];
+    private final NetworkTableEntry[] channelMax = new NetworkTableEntry[CHANNELS];
+    private final NetworkTableEntry[] channelTripped = new NetworkTableEntry[CHANNELS];
+    private final NetworkTableEntry totalMean;
+    private final NetworkTableEntry totalMax;
+    private final NetworkTableEntry voltageMin;
+    private final NetworkTableEntry voltageMean;
+    private final NetworkTableEntry enabled;
+    private final NetworkTableEntry firmware;
+
+    /**
+     * @param lightDrive   The controller to sample.
+     * @param tableName    The NetworkTables table to publish into.
+     * @param window       How many samples the rolling statistics cover.
+     * @param publishEvery How many samples to take between publishes.
+     */
+    public LedTelemetry(final LightDriveCAN lightDrive, final String tableName, final int window,
+            final int publishEvery) {
+        this.lightDrive = lightDrive;
+        this.publishEvery = publishEvery;
+        totalCurrent = new RingBuffer(window);
+        voltage = new RingBuffer(window);
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable(tableName);
+        for (int ch = 0; ch < CHANNELS; ch++) {
+            channelCurrent[ch] = new RingBuffer(window);
+            channelMean[ch] = table.getEntry("Bank " + (ch + 1) + " Current Mean");
+            channelMax[ch] = table.getEntry("Bank " + (ch + 1) + " Current Max");
+            channelTripped[ch] = table.getEntry("Bank " + (ch + 1) + " Tripped");
+        }
+        totalMean = table.getEntry("Total Current Mean");
+        totalMax = table.getEntry("Total Current Max");
+        voltageMin = table.getEntry("Voltage Min");
+        voltageMean = table.getEntry("Voltage Mean");
+        enabled = table.getEntry("Enabled");
+        firmware = table.getEntry("Firmware");
+    }
+
+    public void sample() {
+        // Read everything from one snapshot so a sample never mixes two frames
+        final RxPacket snapshot = lightDrive.GetSnapshot();
+        channelCurrent[0].add(snapshot.I1 / 10.0);
+        channelCurrent[1].add(snapshot.I2 / 10.0);
+        channelCurrent[2].add(snapshot.I3 / 10.0);
+        channelCurrent[3].add(snapshot.I4 / 10.0);
+        totalCurrent.add((snapshot.I1 + snapshot.I2 + snapshot.I3 + snapshot.I4) / 10.0);
+        voltage.add(snapshot.VIN / 10.0);
+
+        final int tripped = snapshot.status.GetTripped();
+        final int newlyTripped = tripped & ~lastTripped;
+        if (newlyTripped != 0) {
+            for (int ch = 0; ch < CHANNELS; ch++) {
+                if ((newlyTripped & (1 << ch)) != 0) {
+                    DriverStation.reportWarning("LightDrive bank " + (ch + 1) + " tripped", false);
+                }
+            }
+        }
+        lastTripped = tripped;
+
+        samplesSincePublish++;
+        if (samplesSincePublish >= publishEvery) {
+            samplesSincePublish = 0;
+            publish();
+        }
+    }
+
+    private void publish() {
+        for (int ch = 0; ch < CHANNELS; ch++) {
+            channelMean[ch].setDouble(channelCurrent[ch].getMean());
+            channelMax[ch].setDouble(channelCurrent[ch].getMax());
+            channelTripped[ch].setBoolean((lastTripped & (1 << ch)) != 0);
+        }
+        totalMean.setDouble(totalCurrent.getMean());
+        totalMax.setDouble(totalCurrent.getMax());
+        voltageMin.setDouble(voltage.getMin());
+        voltageMean.setDouble(voltage.getMean());
+
+        final RxPacket snapshot = lightDrive.GetSnapshot();
+        enabled.setBoolean(snapshot.status.IsEnabled());
+        firmware.setDouble(snapshot.FW);
+    }
+}
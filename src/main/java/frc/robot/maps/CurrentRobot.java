@@ -11,7 +11,7 @@ import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 
 import edu.wpi.first.wpilibj.AnalogGyro;
-import edu.wpi.first.wpilibj.AnalogPotentiometer;
+import edu.wpi.first.wpilibj.AnalogInput;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.Encoder;
@@ -19,6 +19,7 @@ import edu.wpi.first.wpilibj.I2C.Port;
 import edu.wpi.first.wpilibj.SpeedControllerGroup;
 import edu.wpi.first.wpilibj.interfaces.Potentiometer;
 import frc.robot.RobotMap;
+import frc.robot.sensors.AveragedPotentiometer;
 
 public class CurrentRobot implements RobotMap {
 
@@ -152,8 +153,12 @@ public class CurrentRobot implements RobotMap {
 
             @Override
             public Potentiometer getMaflipulatorPot() {
-                AnalogPotentiometer potentiometer = new AnalogPotentiometer(3);
-                return potentiometer;
+                // Let the FPGA average and oversample the noisy pot before the code
+                // reads it
+                AnalogInput input = new AnalogInput(3);
+                input.setAverageBits(4);
+                input.setOversampleBits(2);
+                return new AveragedPotentiometer(input, 1, 0);
 
             }
         };
@@ -0,0 +1,38 @@
+package frc.robot.outputs;
+
+import edu.wpi.first.wpilibj.DoubleSolenoid;
+import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
+
+/**
+ * A double solenoid that only writes to the PCM when the requested value
+ * changes, or the refresh period has passed.
+ */
+public class FilteredSolenoid extends OutputFilter {
+    private final DoubleSolenoid solenoid;
+    private Value lastValue = Value.kOff;
+
+    public FilteredSolenoid(final DoubleSolenoid solenoid, final String name) {
+        this(solenoid, name, DEFAULT_REFRESH_PERIOD);
+    }
+
+    /**
+     * @param solenoid      The solenoid to write to.
+     * @param name          The name to publish the write counts under.
+     * @param refreshPeriod How often in seconds to rewrite an unchanged value.
+     */
+    public FilteredSolenoid(final DoubleSolenoid solenoid, final String name, final double refreshPeriod) {
+        super(name, refreshPeriod);
+        this.solenoid = solenoid;
+    }
+
+    public synchronized void set(final Value value) {
+        if (shouldWrite(value != lastValue)) {
+            lastValue = value;
+            solenoid.set(value);
+        }
+    }
+
+    public synchronized Value get() {
+        return lastValue;
+    }
+}
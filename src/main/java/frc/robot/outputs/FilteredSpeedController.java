@@ -0,0 +1,77 @@
+package frc.robot.outputs;
+
+import edu.wpi.first.wpilibj.SpeedController;
+
+/**
+ * A speed controller that only passes a new speed on to the one it wraps when
+ * it has moved by more than a tolerance, or the refresh period has passed.
+ * Stopping is filtered the same way, so a stopped motor isn't rewritten every
+ * loop, but disabling always goes straight through.
+ */
+public class FilteredSpeedController extends OutputFilter implements SpeedController {
+    private final static double DEFAULT_TOLERANCE = 0.001;
+
+    private final SpeedController controller;
+    private final double tolerance;
+    private double lastSpeed;
+
+    public FilteredSpeedController(final SpeedController controller, final String name) {
+        this(controller, name, DEFAULT_TOLERANCE, DEFAULT_REFRESH_PERIOD);
+    }
+
+    /**
+     * @param controller    The controller to write to.
+     * @param name          The name to publish the write counts under.
+     * @param tolerance     How far the speed has to move to be written.
+     * @param refreshPeriod How often in seconds to rewrite an unchanged speed.
+     */
+    public FilteredSpeedController(final SpeedController controller, final String name, final double tolerance,
+            final double refreshPeriod) {
+        super(name, refreshPeriod);
+        this.controller = controller;
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    public synchronized void set(final double speed) {
+        if (shouldWrite(Math.abs(speed - lastSpeed) > tolerance)) {
+            lastSpeed = speed;
+            controller.set(speed);
+        }
+    }
+
+    @Override
+    public synchronized double get() {
+        return lastSpeed;
+    }
+
+    @Override
+    public synchronized void stopMotor() {
+        if (shouldWrite(lastSpeed != 0)) {
+            lastSpeed = 0;
+            controller.stopMotor();
+        }
+    }
+
+    @Override
+    public synchronized void disable() {
+        lastSpeed = 0;
+        invalidate();
+        controller.disable();
+    }
+
+    @Override
+    public void pidWrite(final double output) {
+        set(output);
+    }
+
+    @Override
+    public void setInverted(final boolean isInverted) {
+        controller.setInverted(isInverted);
+    }
+
+    @Override
+    public boolean getInverted() {
+        return controller.getInverted();
+    }
+}
@@ -0,0 +1,72 @@
+package frc.robot.outputs;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Decides which writes to an output actually reach the hardware. A write goes
+ * through if the value changed, if the last real write is older than the
+ * refresh period, or if the filter was invalidated. Everything else is
+ * skipped and counted.
+ */
+abstract class OutputFilter {
+    final static double DEFAULT_REFRESH_PERIOD = 0.05;
+    // How often to publish the write counts, in seconds
+    private final static double PUBLISH_PERIOD = 0.5;
+
+    private final double refreshPeriod;
+    private double lastWriteTime = Double.NEGATIVE_INFINITY;
+    private double lastPublishTime = Double.NEGATIVE_INFINITY;
+    private boolean valid;
+    private long writes;
+    private long skippedWrites;
+
+    private final NetworkTableEntry writesEntry;
+    private final NetworkTableEntry skippedEntry;
+
+    OutputFilter(final String name, final double refreshPeriod) {
+        this.refreshPeriod = refreshPeriod;
+        final NetworkTable table = NetworkTableInstance.getDefault().getTable("Outputs").getSubTable(name);
+        writesEntry = table.getEntry("Writes");
+        skippedEntry = table.getEntry("Skipped Writes");
+    }
+
+    /**
+     * @param changed Whether the new value differs from the last one written.
+     * @return Whether to write to the hardware.
+     */
+    final boolean shouldWrite(final boolean changed) {
+        final double now = Timer.getFPGATimestamp();
+        if (now - lastPublishTime >= PUBLISH_PERIOD) {
+            lastPublishTime = now;
+            writesEntry.setDouble(writes);
+            skippedEntry.setDouble(skippedWrites);
+        }
+        if (valid && !changed && now - lastWriteTime < refreshPeriod) {
+            skippedWrites++;
+            return false;
+        }
+        valid = true;
+        lastWriteTime = now;
+        writes++;
+        return true;
+    }
+
+    /**
+     * Make the next write go through, for when something else has changed the
+     * output behind the filter's back.
+     */
+    public synchronized void invalidate() {
+        valid = false;
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    public synchronized long getSkippedWrites() {
+        return skippedWrites;
+    }
+}
@@ -0,0 +1,169 @@
+package frc.robot.power;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.PowerDistributionPanel;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.util.PeriodicLoop;
+import frc.robot.util.RingBuffer;
+
+/**
+ * Shares a battery current budget between the subsystems, so they get capped
+ * before the voltage sags far enough to brown out.
+ *
+ * <p>
+ * Each subsystem registers as a {@link Consumer} with a priority and the
+ * current it draws at full output, and passes its commanded outputs through
+ * {@link Consumer#limit(double)}. On its own Notifier the budget samples the
+ * PDP and battery voltage, shrinks the available current as the voltage drops
+ * or the measured current runs over, and hands it out by priority based on
+ * the current each consumer's commanded output predicts.
+ */
+public class CurrentBudget extends PeriodicLoop {
+    private final static int WINDOW = 5;
+
+    private final PowerDistributionPanel pdp;
+    private final double budgetAmps;
+    private final double sagVoltage;
+    private final double minVoltage;
+    private final int publishEvery;
+
+    // Highest priority first, replaced whenever a consumer registers
+    private volatile Consumer[] consumers = new Consumer[0];
+
+    // Only touched by the notifier thread
+    private final RingBuffer totalCurrent = new RingBuffer(WINDOW);
+    private final RingBuffer voltage = new RingBuffer(WINDOW);
+    private int samplesSincePublish;
+
+    private final NetworkTable table;
+    private final NetworkTableEntry totalEntry;
+    private final NetworkTableEntry voltageEntry;
+    private final NetworkTableEntry availableEntry;
+
+    /**
+     * @param pdp          The PDP to measure the total current with.
+     * @param budgetAmps   The most current to hand out with a healthy battery.
+     * @param sagVoltage   The battery voltage below which the budget shrinks.
+     * @param minVoltage   The battery voltage at which the budget is halved.
+     * @param publishEvery How many samples to take between telemetry updates.
+     */
+    public CurrentBudget(final PowerDistributionPanel pdp, final double budgetAmps, final double sagVoltage,
+            final double minVoltage, final int publishEvery) {
+        this.pdp = pdp;
+        this.budgetAmps = budgetAmps;
+        this.sagVoltage = sagVoltage;
+        this.minVoltage = minVoltage;
+        this.publishEvery = publishEvery;
+
+        table = NetworkTableInstance.getDefault().getTable("Power");
+        totalEntry = table.getEntry("Total Current");
+        voltageEntry = table.getEntry("Voltage");
+        availableEntry = table.getEntry("Available Current");
+    }
+
+    /**
+     * Add a subsystem to the budget.
+     *
+     * @param name     The name to publish its telemetry under.
+     * @param priority Higher priorities are served first.
+     * @param peakAmps The current it draws at full output.
+     */
+    public synchronized Consumer register(final String name, final int priority, final double peakAmps) {
+        final Consumer consumer = new Consumer(table.getSubTable(name), priority, peakAmps);
+        final Consumer[] updated = Arrays.copyOf(consumers, consumers.length + 1);
+        updated[updated.length - 1] = consumer;
+        Arrays.sort(updated, Comparator.comparingInt((Consumer c) -> c.priority).reversed());
+        consumers = updated;
+        return consumer;
+    }
+
+    @Override
+    protected void update() {
+        totalCurrent.add(pdp.getTotalCurrent());
+        voltage.add(RobotController.getBatteryVoltage());
+        final double amps = totalCurrent.getMean();
+        final double volts = voltage.getMean();
+
+        // Halve the budget linearly between the sag and minimum voltages, and
+        // shrink it further if more is being drawn than was handed out
+        double budget = budgetAmps;
+        if (volts < sagVoltage) {
+            budget *= 1 - 0.5 * Math.min(1, (sagVoltage - volts) / (sagVoltage - minVoltage));
+        }
+        if (amps > budgetAmps) {
+            budget *= budgetAmps / amps;
+        }
+        double remaining = budget;
+        final Consumer[] current = consumers;
+        for (int i = 0; i < current.length; i++) {
+            final Consumer consumer = current[i];
+            consumer.cap = Math.min(1, remaining / consumer.peakAmps);
+            remaining -= Math.min(remaining, consumer.getPredictedAmps());
+        }
+
+        samplesSincePublish++;
+        if (samplesSincePublish >= publishEvery) {
+            samplesSincePublish = 0;
+            totalEntry.setDouble(amps);
+            voltageEntry.setDouble(volts);
+            availableEntry.setDouble(budget);
+            for (int i = 0; i < current.length; i++) {
+                current[i].publish(budget);
+            }
+        }
+    }
+
+    /**
+     * One subsystem's share of the budget. Its outputs can be limited from any
+     * thread.
+     */
+    public static class Consumer {
+        private final int priority;
+        private final double peakAmps;
+        private volatile double demand;
+        private volatile double cap = 1;
+
+        private final NetworkTableEntry demandEntry;
+        private final NetworkTableEntry capEntry;
+        private final NetworkTableEntry usageEntry;
+
+        Consumer(final NetworkTable table, final int priority, final double peakAmps) {
+            this.priority = priority;
+            this.peakAmps = peakAmps;
+            demandEntry = table.getEntry("Predicted Current");
+            capEntry = table.getEntry("Output Cap");
+            usageEntry = table.getEntry("Budget Usage");
+        }
+
+        /**
+         * Record a commanded output and cap it to this consumer's share.
+         *
+         * @param output The commanded output, from -1 to 1.
+         * @return The output to actually apply.
+         */
+        public double limit(final double output) {
+            demand = Math.abs(output);
+            final double limit = cap;
+            return Math.max(-limit, Math.min(limit, output));
+        }
+
+        public double getCap() {
+            return cap;
+        }
+
+        public double getPredictedAmps() {
+            return demand * peakAmps;
+        }
+
+        void publish(final double available) {
+            demandEntry.setDouble(getPredictedAmps());
+            capEntry.setDouble(cap);
+            usageEntry.setDouble(available > 0 ? getPredictedAmps() / available : 0);
+        }
+    }
+}
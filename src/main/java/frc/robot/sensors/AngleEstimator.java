@@ -0,0 +1,88 @@
+package frc.robot.sensors;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.interfaces.Potentiometer;
+import frc.robot.util.AlphaBetaFilter;
+import frc.robot.util.PeriodicLoop;
+import frc.robot.util.SeqLock;
+
+/**
+ * Filters a potentiometer into an angle and angular velocity on its own
+ * Notifier, and predicts where the joint would stop if it started slowing
+ * down now. Threshold checks against the prediction don't chatter on sensor
+ * noise, and cut the motor early enough to stop at the threshold instead of
+ * past it.
+ *
+ * <p>
+ * The estimate can be read from any thread without locking.
+ */
+public class AngleEstimator extends PeriodicLoop {
+    private final Potentiometer pot;
+    private final AlphaBetaFilter filter;
+    private final double deceleration;
+
+    public final static int ANGLE = 0;
+    public final static int VELOCITY = 1;
+
+    private final SeqLock estimate = new SeqLock(2);
+
+    /**
+     * @param pot          The sensor to read.
+     * @param alpha        The filter's position gain.
+     * @param beta         The filter's velocity gain.
+     * @param deceleration How fast the joint slows down once the motor stops,
+     *                     in pot units per second squared.
+     */
+    public AngleEstimator(final Potentiometer pot, final double alpha, final double beta,
+            final double deceleration) {
+        this.pot = pot;
+        this.deceleration = deceleration;
+        filter = new AlphaBetaFilter(alpha, beta);
+        estimate.beginWrite();
+        estimate.set(ANGLE, pot.get());
+        estimate.endWrite();
+    }
+
+    /**
+     * Take a sample. This is called by the Notifier after {@link #start(double)},
+     * or can be called from another loop that owns the estimator instead.
+     */
+    @Override
+    public void update() {
+        filter.update(pot.get(), Timer.getFPGATimestamp());
+
+        estimate.beginWrite();
+        estimate.set(ANGLE, filter.getPosition());
+        estimate.set(VELOCITY, filter.getVelocity());
+        estimate.endWrite();
+    }
+
+    public double getAngle() {
+        return estimate.get(ANGLE);
+    }
+
+    /**
+     * Read the angle and velocity from the same update.
+     *
+     * @param estimate An array of at least 2 elements to fill, indexed by
+     *                 {@link #ANGLE} and {@link #VELOCITY}.
+     */
+    public void getEstimate(final double[] estimate) {
+        this.estimate.read(estimate);
+    }
+
+    /**
+     * Get where the joint would come to rest if it started slowing down now.
+     */
+    public double getStoppingAngle() {
+        double a;
+        double v;
+        int s;
+        do {
+            s = estimate.readBegin();
+            a = estimate.get(ANGLE);
+            v = estimate.get(VELOCITY);
+        } while (estimate.readRetry(s));
+        return a + v * Math.abs(v) / (2 * deceleration);
+    }
+}
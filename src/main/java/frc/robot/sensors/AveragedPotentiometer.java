@@ -0,0 +1,62 @@
+package frc.robot.sensors;
+
+import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.PIDSourceType;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.SendableBase;
+import edu.wpi.first.wpilibj.interfaces.Potentiometer;
+import edu.wpi.first.wpilibj.smartdashboard.SendableBuilder;
+
+/**
+ * A potentiometer read from the FPGA's averaged voltage. AnalogPotentiometer
+ * reads the plain voltage, which skips the averaging engine, so the average
+ * and oversample bits set on the input would do nothing through it.
+ */
+public class AveragedPotentiometer extends SendableBase implements Potentiometer {
+    private final AnalogInput input;
+    private final double fullRange;
+    private final double offset;
+    private PIDSourceType pidSource = PIDSourceType.kDisplacement;
+
+    /**
+     * @param input     The analog input, with its average and oversample bits
+     *                  already set.
+     * @param fullRange The value at the 5V rail.
+     * @param offset    The value at 0V.
+     */
+    public AveragedPotentiometer(final AnalogInput input, final double fullRange, final double offset) {
+        this.input = input;
+        this.fullRange = fullRange;
+        this.offset = offset;
+        addChild(input);
+    }
+
+    @Override
+    public double get() {
+        return input.getAverageVoltage() / RobotController.getVoltage5V() * fullRange + offset;
+    }
+
+    @Override
+    public void setPIDSourceType(final PIDSourceType pidSource) {
+        if (pidSource != PIDSourceType.kDisplacement) {
+            throw new IllegalArgumentException("Only displacement PID is allowed for potentiometers.");
+        }
+        this.pidSource = pidSource;
+    }
+
+    @Override
+    public PIDSourceType getPIDSourceType() {
+        return pidSource;
+    }
+
+    @Override
+    public double pidGet() {
+        return get();
+    }
+
+    @Override
+    public void initSendable(final SendableBuilder builder) {
+        builder.setSmartDashboardType("Analog Input");
+        builder.addDoubleProperty("Value", this::get, null);
+    }
+}
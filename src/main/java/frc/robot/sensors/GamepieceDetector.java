@@ -0,0 +1,106 @@
+package frc.robot.sensors;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.InterruptHandlerFunction;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Watches the gamepiece limit switch with an FPGA interrupt instead of polling
+ * it once per loop, so the manipulator can react within milliseconds of a
+ * gamepiece arriving.
+ *
+ * <p>
+ * The switch reads false while pressed, so a gamepiece arriving is a falling
+ * edge. Every edge latches a detection for commands to pick up. While armed,
+ * the first edge also runs the reaction on the interrupt thread, so the
+ * reaction has to be safe to call from there. The edge count and the time
+ * from the edge to the end of the reaction are published under "Gamepiece".
+ */
+public class GamepieceDetector {
+    private final DigitalInput input;
+    private final Runnable reaction;
+
+    private volatile boolean armed;
+    private volatile boolean detected;
+    // Only touched by the interrupt thread
+    private long edges;
+    private double maxLatency;
+
+    private final NetworkTableEntry edgesEntry;
+    private final NetworkTableEntry latencyEntry;
+    private final NetworkTableEntry maxLatencyEntry;
+
+    /**
+     * @param input    The limit switch, which reads false while pressed.
+     * @param reaction What to do when a gamepiece arrives while armed.
+     */
+    public GamepieceDetector(final DigitalInput input, final Runnable reaction) {
+        this.input = input;
+        this.reaction = reaction;
+
+        final NetworkTable table = NetworkTableInstance.getDefault().getTable("Gamepiece");
+        edgesEntry = table.getEntry("Edges");
+        latencyEntry = table.getEntry("Reaction Latency");
+        maxLatencyEntry = table.getEntry("Max Reaction Latency");
+    }
+
+    public void start() {
+        input.requestInterrupts(new InterruptHandlerFunction<Object>() {
+            @Override
+            public void interruptFired(final int interruptAssertedMask, final Object param) {
+                onEdge();
+            }
+        });
+        input.setUpSourceEdge(false, true);
+        input.enableInterrupts();
+    }
+
+    public void stop() {
+        input.cancelInterrupts();
+    }
+
+    /**
+     * Clear any earlier detection and run the reaction on the next edge.
+     */
+    public void arm() {
+        detected = false;
+        armed = true;
+    }
+
+    public void disarm() {
+        armed = false;
+    }
+
+    /**
+     * @return Whether a gamepiece has arrived since the last {@link #arm()} or
+     *         {@link #clear()}.
+     */
+    public boolean isDetected() {
+        return detected;
+    }
+
+    public void clear() {
+        detected = false;
+    }
+
+    private void onEdge() {
+        final boolean react = armed;
+        armed = false;
+        if (react) {
+            reaction.run();
+        }
+        detected = true;
+
+        edges++;
+        edgesEntry.setDouble(edges);
+        if (react) {
+            final double latency = Timer.getFPGATimestamp() - input.readFallingTimestamp();
+            maxLatency = Math.max(maxLatency, latency);
+            latencyEntry.setDouble(latency);
+            maxLatencyEntry.setDouble(maxLatency);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package frc.robot.sensors;
+
+import java.util.Arrays;
+
+import com.chopshop166.chopshoplib.sensors.Lidar;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.util.PeriodicLoop;
+import frc.robot.util.SeqLock;
+
+/**
+ * Polls a Lidar on its own Notifier, so the blocking I2C read never runs on the
+ * main loop. Readings outside the sensor's useful range are dropped, and the
+ * rest go through a small median filter to knock out single bad readings.
+ *
+ * <p>
+ * The filtered distance can be read from any thread without locking, along
+ * with the FPGA time of the reading it came from.
+ */
+public class LidarSampler extends PeriodicLoop {
+    // Inches
+    private final static double MIN_RANGE = 1;
+    private final static double MAX_RANGE = 400;
+
+    private final static int DISTANCE = 0;
+    private final static int TIME = 1;
+
+    private final Lidar lidar;
+
+    // Only touched by the notifier thread
+    private final double[] window;
+    private final double[] sorted;
+    private int next;
+    private int count;
+    private boolean reportedError;
+
+    // Published distance and the time of its reading
+    private final SeqLock range = new SeqLock(2);
+
+    /**
+     * @param lidar      The sensor to poll.
+     * @param windowSize How many readings to take the median of, usually 3 or 5.
+     */
+    public LidarSampler(final Lidar lidar, final int windowSize) {
+        this.lidar = lidar;
+        window = new double[windowSize];
+        sorted = new double[windowSize];
+        range.beginWrite();
+        range.set(TIME, Double.NEGATIVE_INFINITY);
+        range.endWrite();
+    }
+
+    @Override
+    protected void update() {
+        final double distance;
+        try {
+            distance = lidar.getDistance(false);
+        } catch (RuntimeException e) {
+            if (!reportedError) {
+                reportedError = true;
+                DriverStation.reportError("Lidar read failed: " + e, false);
+            }
+            return;
+        }
+        final double now = Timer.getFPGATimestamp();
+        if (!(distance >= MIN_RANGE && distance <= MAX_RANGE)) {
+            return;
+        }
+
+        window[next] = distance;
+        next = (next + 1) % window.length;
+        if (count < window.length) {
+            count++;
+        }
+        System.arraycopy(window, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        final double median = (count & 1) != 0 ? sorted[count / 2]
+                : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+
+        range.beginWrite();
+        range.set(DISTANCE, median);
+        range.set(TIME, now);
+        range.endWrite();
+    }
+
+    /**
+     * Read the latest filtered range without locking.
+     *
+     * @param range An array of at least 2 elements to fill with the distance in
+     *              inches and the FPGA timestamp of the reading.
+     */
+    public void getRange(final double[] range) {
+        this.range.read(range);
+    }
+
+    /**
+     * Get the filtered distance if it is recent enough to act on.
+     *
+     * @param now    The current FPGA time in seconds.
+     * @param maxAge The oldest reading to accept, in seconds.
+     * @return The distance in inches, or NaN if there is no recent reading.
+     */
+    public double getDistance(final double now, final double maxAge) {
+        double distance;
+        double time;
+        int s;
+        do {
+            s = range.readBegin();
+            distance = range.get(DISTANCE);
+            time = range.get(TIME);
+        } while (range.readRetry(s));
+        return now - time <= maxAge ? distance : Double.NaN;
+    }
+}
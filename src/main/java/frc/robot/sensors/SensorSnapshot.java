@@ -0,0 +1,80 @@
+package frc.robot.sensors;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Reads every registered sensor once at the start of each robot loop, so
+ * commands and subsystems see consistent values within the loop and each
+ * hardware read is only paid for once.
+ *
+ * <p>
+ * Sensors are registered while the robot starts up, and each registration
+ * returns a slot to read the sensor's value from. Sampling and reading are
+ * meant for the main robot thread.
+ */
+public class SensorSnapshot {
+    private DoubleSupplier[] doubleSources = new DoubleSupplier[0];
+    private BooleanSupplier[] booleanSources = new BooleanSupplier[0];
+    private double[] doubles = new double[0];
+    private boolean[] booleans = new boolean[0];
+    private double timestamp = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param source How to read the sensor, called once per loop.
+     * @return The slot to pass to {@link #getDouble(int)}.
+     */
+    public int addDouble(final DoubleSupplier source) {
+        final int slot = doubleSources.length;
+        doubleSources = Arrays.copyOf(doubleSources, slot + 1);
+        doubleSources[slot] = source;
+        doubles = Arrays.copyOf(doubles, slot + 1);
+        doubles[slot] = source.getAsDouble();
+        return slot;
+    }
+
+    /**
+     * @param source How to read the sensor, called once per loop.
+     * @return The slot to pass to {@link #getBoolean(int)}.
+     */
+    public int addBoolean(final BooleanSupplier source) {
+        final int slot = booleanSources.length;
+        booleanSources = Arrays.copyOf(booleanSources, slot + 1);
+        booleanSources[slot] = source;
+        booleans = Arrays.copyOf(booleans, slot + 1);
+        booleans[slot] = source.getAsBoolean();
+        return slot;
+    }
+
+    /**
+     * Read every sensor. Call this once at the start of each loop, before the
+     * scheduler runs.
+     */
+    public void sample() {
+        timestamp = Timer.getFPGATimestamp();
+        for (int i = 0; i < doubleSources.length; i++) {
+            doubles[i] = doubleSources[i].getAsDouble();
+        }
+        for (int i = 0; i < booleanSources.length; i++) {
+            booleans[i] = booleanSources[i].getAsBoolean();
+        }
+    }
+
+    public double getDouble(final int slot) {
+        return doubles[slot];
+    }
+
+    public boolean getBoolean(final int slot) {
+        return booleans[slot];
+    }
+
+    /**
+     * @return The FPGA time in seconds when the sensors were last read.
+     */
+    public double getTimestamp() {
+        return timestamp;
+    }
+}
@@ -1,26 +1,45 @@
 package frc.robot.subsystems;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
 import com.chopshop166.chopshoplib.commands.CommandChain;
 import com.chopshop166.chopshoplib.outputs.SendableSpeedController;
 import com.chopshop166.chopshoplib.sensors.Lidar;
 import com.chopshop166.chopshoplib.sensors.PIDGyro;
 
 import edu.wpi.first.networktables.NetworkTable;
-import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.GenericHID.Hand;
-import edu.wpi.first.wpilibj.PIDController;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.command.InstantCommand;
-import edu.wpi.first.wpilibj.command.PIDCommand;
 import edu.wpi.first.wpilibj.command.Subsystem;
 import edu.wpi.first.wpilibj.drive.DifferentialDrive;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Robot;
 import frc.robot.RobotMap;
+import frc.robot.drive.DriveControlLoop;
+import frc.robot.drive.Odometry;
+import frc.robot.drive.Trajectory;
+import frc.robot.drive.TrajectoryFile;
+import frc.robot.outputs.FilteredSpeedController;
+import frc.robot.sensors.LidarSampler;
+import frc.robot.util.InputShaper;
+import frc.robot.vision.VisionTarget;
+import frc.robot.vision.VisionTargetCache;
 
 public class Drive extends Subsystem {
 
@@ -28,12 +47,28 @@ public class Drive extends Subsystem {
     private SendableSpeedController right;
     private DoubleSolenoid climbPiston;
     private Lidar lidar;
+    private LidarSampler lidarSampler;
     private Encoder leftEncoder;
     private Encoder rightEncoder;
     private PIDGyro gyro;
+    // Slots in the sensor snapshot
+    private int leftCountSensor;
+    private int rightCountSensor;
+    // Distances are worked out from the counts instead of reading the encoders
+    // twice
+    private double leftDistancePerPulse;
+    private double rightDistancePerPulse;
     private DifferentialDrive drive;
     NetworkTableInstance inst;
     NetworkTable table;
+    VisionTargetCache visionTargets;
+    // Also keeps the heading history used to match vision frames to where the
+    // robot was pointing when they were captured
+    Odometry odometry;
+    // The only thing that drives the motors, commands post requests to it
+    DriveControlLoop controlLoop;
+    // Paths loaded at startup, by file name without the extension
+    private final Map<String, Trajectory> trajectories = new HashMap<>();
 
     public Drive(final RobotMap.DriveMap map) { // NOPMD
         super();
@@ -44,17 +79,29 @@ public class Drive extends Subsystem {
         right = map.getRight();
         climbPiston = map.getClimbPiston();
         lidar = map.getLidar();
+        lidarSampler = new LidarSampler(lidar, 5);
+        lidarSampler.start(0.02);
         leftEncoder = map.getLeftEncoder();
         rightEncoder = map.getRightEncoder();
         gyro = map.getGyro();
-        gyroDrivePID = new PIDController(.01, .0009, 0.0, 0.0, gyro, (double value) -> {
-            gyroCorrection = value;
-        });
-        drive = new DifferentialDrive(left, right);
+        leftCountSensor = Robot.sensors.addDouble(leftEncoder::get);
+        rightCountSensor = Robot.sensors.addDouble(rightEncoder::get);
+        leftDistancePerPulse = leftEncoder.getDistancePerPulse();
+        rightDistancePerPulse = rightEncoder.getDistancePerPulse();
+        drive = new DifferentialDrive(new FilteredSpeedController(left, "Drive Left"),
+                new FilteredSpeedController(right, "Drive Right"));
+        // The input shapers already apply a deadband, and a second one here would
+        // also swallow small heading and trajectory corrections
+        drive.setDeadband(0);
         addChildren();
 
         inst = NetworkTableInstance.getDefault();
         table = inst.getTable("Vision Correction Table");
+        odometry = new Odometry(leftEncoder, rightEncoder, gyro);
+        odometry.start(0.005);
+        visionTargets = new VisionTargetCache(table, odometry);
+        controlLoop = new DriveControlLoop(drive, odometry, Robot.power.register("Drive", 3, 160));
+        controlLoop.start(0.005);
 
         SmartDashboard.putData("VISIONNNNN", visionPID());
     }
@@ -69,16 +116,60 @@ public class Drive extends Subsystem {
     private final double visionCorrectionMultiplier = 2;
     private final double visionCorrectionSpeed = 0.2;
     private final double visionCorrectionRange = 0.1;
+    // Vision frames older than this (in seconds) are not used for steering
+    private volatile double visionMaxAge = 0.25;
+    // Half the camera's horizontal field of view, since corrections are -1 to 1
+    private final double visionDegreesPerUnit = 30;
 
     private final double slowTurnSpeed = 0.65;
 
     private final double driveDeadband = 0.05;
 
-    double gyroCorrection;
-    PIDController gyroDrivePID;
+    // Driver inputs, only used from the control loop. Slewing the forward input
+    // keeps slammed triggers from browning out the robot.
+    private final InputShaper forwardShaper = new InputShaper().withDeadband(0.02).withExpo(2).withSlewRate(3);
+    private final InputShaper turnShaper = new InputShaper().withDeadband(0.02).withExpo(2);
 
+    // Squared before it's sent, as arcadeDrive used to, so .2 is really .04
     double sandstormSpeed = .2;
 
+    // Trajectory following gains, in output per inch, inch/s, inch/s^2 and degree
+    private final double trajectoryKV = 1.0 / 150;
+    private final double trajectoryKA = 0.002;
+    private final double trajectoryKP = 0.02;
+    private final double trajectoryTolerance = 2.0;
+    private final double trajectoryTimeout = 1.0;
+
+    // Forward speed while approaching a vision target, not squared. It ramps
+    // down to the minimum between the slow down and stop distances on the Lidar,
+    // in inches.
+    private final double visionApproachSpeed = 0.3;
+    private final double visionMinApproachSpeed = 0.12;
+    private final double visionSlowDownDistance = 48;
+    private final double visionStopDistance = 12;
+    private final double lidarMaxAge = 0.1;
+    private final double visionTolerance = 1.5;
+
+    // Scratch space for reading the odometry from commands
+    private final double[] pose = new double[4];
+
+    public Odometry getOdometry() {
+        return odometry;
+    }
+
+    private double getLeftDistance() {
+        return Robot.sensors.getDouble(leftCountSensor) * leftDistancePerPulse;
+    }
+
+    private double getRightDistance() {
+        return Robot.sensors.getDouble(rightCountSensor) * rightDistancePerPulse;
+    }
+
+    private double getHeading() {
+        odometry.getPose(pose);
+        return pose[2];
+    }
+
     @Override
     public void initDefaultCommand() {
         setDefaultCommand(driveNormal());
@@ -88,11 +179,12 @@ public class Drive extends Subsystem {
         return new Command("driveNormal", this) {
 
             @Override
-            protected void execute() {
-                drive.arcadeDrive(
-                        +Robot.driveController.getTriggerAxis(Hand.kRight)
-                                - Robot.driveController.getTriggerAxis(Hand.kLeft),
-                        Robot.driveController.getX(Hand.kLeft));
+            protected void initialize() {
+                // The control loop reads the controller itself
+                controlLoop.setDriver(
+                        () -> forwardShaper.calculate(+Robot.driveController.getTriggerAxis(Hand.kRight)
+                                - Robot.driveController.getTriggerAxis(Hand.kLeft)),
+                        () -> turnShaper.calculate(Robot.driveController.getX(Hand.kLeft)));
             }
 
             @Override
@@ -106,11 +198,11 @@ public class Drive extends Subsystem {
         return new Command("driveBackwards", this) {
 
             @Override
-            protected void execute() {
-                drive.arcadeDrive(
-                        -Robot.driveController.getTriggerAxis(Hand.kRight)
-                                + Robot.driveController.getTriggerAxis(Hand.kLeft),
-                        Robot.driveController.getX(Hand.kLeft));
+            protected void initialize() {
+                controlLoop.setDriver(
+                        () -> forwardShaper.calculate(-Robot.driveController.getTriggerAxis(Hand.kRight)
+                                + Robot.driveController.getTriggerAxis(Hand.kLeft)),
+                        () -> turnShaper.calculate(Robot.driveController.getX(Hand.kLeft)));
             }
 
             @Override
@@ -125,7 +217,7 @@ public class Drive extends Subsystem {
 
             @Override
             protected void execute() {
-                drive.arcadeDrive(0, -slowTurnSpeed);
+                controlLoop.setOpenLoop(0, -slowTurnSpeed, true);
             }
 
             @Override
@@ -135,7 +227,7 @@ public class Drive extends Subsystem {
 
             @Override
             protected void end() {
-                drive.arcadeDrive(0, 0);
+                controlLoop.stopMotor();
             }
         };
     }
@@ -145,7 +237,7 @@ public class Drive extends Subsystem {
 
             @Override
             protected void execute() {
-                drive.arcadeDrive(0, slowTurnSpeed);
+                controlLoop.setOpenLoop(0, slowTurnSpeed, true);
             }
 
             @Override
@@ -155,30 +247,34 @@ public class Drive extends Subsystem {
 
             @Override
             protected void end() {
-                drive.arcadeDrive(0, 0);
+                controlLoop.stopMotor();
             }
         };
     }
 
     public Command goXDistanceForward(double distance) {
         return new Command("GoXDistance", this) {
+            // Measured from the starting counts rather than resetting the encoders,
+            // which would throw off odometry
+            double leftStart;
+            double rightStart;
+            double heading;
+
             @Override
             protected void initialize() {
-                // gyroDrivePID.reset();
-                // gyroDrivePID.setSetpoint(gyro.getAngle());
-                // gyroDrivePID.enable();
-                leftEncoder.reset();
-                rightEncoder.reset();
+                heading = getHeading();
+                leftStart = Robot.sensors.getDouble(leftCountSensor);
+                rightStart = Robot.sensors.getDouble(rightCountSensor);
             }
 
             @Override
             protected void execute() {
-                drive.arcadeDrive(sandstormSpeed, gyroCorrection);
+                controlLoop.setHeading(sandstormSpeed * Math.abs(sandstormSpeed), heading);
             }
 
             @Override
             protected boolean isFinished() {
-                if ((leftEncoder.get() + rightEncoder.get()) / 2 > distance)
+                if (((Robot.sensors.getDouble(leftCountSensor) - leftStart) + (Robot.sensors.getDouble(rightCountSensor) - rightStart)) / 2 > distance)
                     return true;
                 else
                     return false;
@@ -186,30 +282,34 @@ public class Drive extends Subsystem {
 
             @Override
             protected void end() {
-                // gyroDrivePID.disable();
+                controlLoop.stopMotor();
             }
         };
     }
 
     public Command goXDistanceBackward(double distance) {
         return new Command("GoXDistance", this) {
+            // Measured from the starting counts rather than resetting the encoders,
+            // which would throw off odometry
+            double leftStart;
+            double rightStart;
+            double heading;
+
             @Override
             protected void initialize() {
-                // gyroDrivePID.reset();
-                // gyroDrivePID.setSetpoint(gyro.getAngle());
-                // gyroDrivePID.enable();
-                leftEncoder.reset();
-                rightEncoder.reset();
+                heading = getHeading();
+                leftStart = Robot.sensors.getDouble(leftCountSensor);
+                rightStart = Robot.sensors.getDouble(rightCountSensor);
             }
 
             @Override
             protected void execute() {
-                drive.arcadeDrive(-sandstormSpeed, gyroCorrection);
+                controlLoop.setHeading(-sandstormSpeed * Math.abs(sandstormSpeed), heading);
             }
 
             @Override
             protected boolean isFinished() {
-                if ((Math.abs(leftEncoder.get() + rightEncoder.get()) / 2 > distance))
+                if ((Math.abs((Robot.sensors.getDouble(leftCountSensor) - leftStart) + (Robot.sensors.getDouble(rightCountSensor) - rightStart)) / 2 > distance))
                     return true;
                 else
                     return false;
@@ -217,7 +317,120 @@ public class Drive extends Subsystem {
 
             @Override
             protected void end() {
-                // gyroDrivePID.disable();
+                controlLoop.stopMotor();
+            }
+        };
+    }
+
+    private Path pathsDirectory() {
+        return Filesystem.getDeployDirectory().toPath().resolve("paths");
+    }
+
+    /**
+     * Load every binary path in the paths folder of the deploy directory, so
+     * autonomous doesn't have to read files when it starts. Paths are made with
+     * the trajectoryTool Gradle task.
+     */
+    public void loadTrajectories() {
+        final Path directory = pathsDirectory();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + TrajectoryFile.EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - TrajectoryFile.EXTENSION.length());
+                try {
+                    trajectories.put(name, TrajectoryFile.read(file));
+                } catch (IOException e) {
+                    DriverStation.reportError("Could not load path " + name + ": " + e.getMessage(), false);
+                }
+            }
+        } catch (IOException e) {
+            DriverStation.reportError("Could not list paths: " + e.getMessage(), false);
+        }
+    }
+
+    /**
+     * @return The names of the paths loaded so far, in order.
+     */
+    public Set<String> getTrajectoryNames() {
+        return new TreeSet<>(trajectories.keySet());
+    }
+
+    /**
+     * Get a path loaded by {@link #loadTrajectories()}, reading it from the
+     * paths folder if it wasn't loaded at startup.
+     */
+    public Trajectory loadTrajectory(String name) {
+        Trajectory trajectory = trajectories.get(name);
+        if (trajectory != null) {
+            return trajectory;
+        }
+        try {
+            trajectory = TrajectoryFile.read(pathsDirectory().resolve(name + TrajectoryFile.EXTENSION));
+            trajectories.put(name, trajectory);
+            return trajectory;
+        } catch (IOException e) {
+            DriverStation.reportError("Could not load path " + name + ": " + e.getMessage(), false);
+            return Trajectory.EMPTY;
+        }
+    }
+
+    public Command followTrajectory(String name) {
+        // Looked up when the command starts, so commands can be built before the
+        // paths are loaded
+        return followTrajectory(name, () -> loadTrajectory(name));
+    }
+
+    public Command followTrajectory(String name, Trajectory trajectory) {
+        return followTrajectory(name, () -> trajectory);
+    }
+
+    private Command followTrajectory(String name, Supplier<Trajectory> path) {
+        return new Command("Follow " + name, this) {
+            final double[] setpoint = new double[Trajectory.FIELDS];
+            Trajectory trajectory = Trajectory.EMPTY;
+            double startTime;
+            double startLeft;
+            double startRight;
+            double startHeading;
+            double traveled;
+
+            @Override
+            protected void initialize() {
+                trajectory = path.get();
+                startTime = Timer.getFPGATimestamp();
+                startLeft = getLeftDistance();
+                startRight = getRightDistance();
+                startHeading = getHeading();
+                traveled = 0;
+            }
+
+            @Override
+            protected void execute() {
+                trajectory.sample(Timer.getFPGATimestamp() - startTime, setpoint);
+                traveled = ((getLeftDistance() - startLeft) + (getRightDistance() - startRight)) / 2;
+
+                double forward = trajectoryKV * setpoint[Trajectory.VELOCITY]
+                        + trajectoryKA * setpoint[Trajectory.ACCELERATION]
+                        + trajectoryKP * (setpoint[Trajectory.POSITION] - traveled);
+                controlLoop.setHeading(forward, startHeading + setpoint[Trajectory.HEADING]);
+            }
+
+            @Override
+            protected boolean isFinished() {
+                double elapsed = Timer.getFPGATimestamp() - startTime;
+                if (elapsed < trajectory.getDuration()) {
+                    return false;
+                }
+                return Math.abs(trajectory.getEndPosition() - traveled) < trajectoryTolerance
+                        || elapsed > trajectory.getDuration() + trajectoryTimeout;
+            }
+
+            @Override
+            protected void end() {
+                controlLoop.stopMotor();
             }
         };
     }
@@ -250,14 +463,13 @@ public class Drive extends Subsystem {
 
     public Command align() {
         return new Command("align", this) {
-            double visionCorrectionFactor = table.getEntry("Vision Correction").getDouble(0);
-            boolean visionConfirmation = table.getEntry("Vision Found").getBoolean(false);
             double visionTurnSpeed;
 
             @Override
             protected void execute() {
-                visionCorrectionFactor = table.getEntry("Vision Correction").getDouble(0);
-                visionConfirmation = table.getEntry("Vision Found").getBoolean(false);
+                VisionTarget target = visionTargets.get();
+                double visionCorrectionFactor = target.correction;
+                boolean visionConfirmation = target.isUsable(Timer.getFPGATimestamp(), visionMaxAge);
 
                 // drive.arcadeDrive(0, visionCorrectionMultiplier * visionCorrectionFactor);
                 if ((visionCorrectionFactor > driveDeadband) && visionConfirmation)
@@ -267,8 +479,8 @@ public class Drive extends Subsystem {
                 else
                     visionTurnSpeed = 0;
 
-                drive.arcadeDrive(Robot.driveController.getTriggerAxis(Hand.kRight)
-                        - Robot.driveController.getTriggerAxis(Hand.kLeft), visionTurnSpeed);
+                controlLoop.setOpenLoop(Robot.driveController.getTriggerAxis(Hand.kRight)
+                        - Robot.driveController.getTriggerAxis(Hand.kLeft), visionTurnSpeed, true);
             }
 
             @Override
@@ -278,48 +490,74 @@ public class Drive extends Subsystem {
 
             @Override
             protected void end() {
-                drive.stopMotor();
+                controlLoop.stopMotor();
             }
         };
     }
 
     public Command visionPID() {
-        return new PIDCommand("Vision PID", .72, .009, 0.0, this) {
-            PIDController visionPIDController;
-            NetworkTableEntry visionFound;
-            NetworkTableEntry visionCorrection;
+        // Vision corrections describe where the target was when the frame was
+        // captured, so they are turned into an absolute heading using the gyro
+        // history and the control loop holds that heading between frames
+        return new Command("Vision PID", this) {
+            long lastSequence;
+            boolean hasTarget;
+            double setpoint;
 
             @Override
             protected void initialize() {
-                visionPIDController = getPIDController();
-                visionPIDController.setAbsoluteTolerance(0.05);
-                visionFound = table.getEntry("Vision Found");
-                visionCorrection = table.getEntry("Vision Correction");
-
+                lastSequence = -1;
+                hasTarget = false;
+                setpoint = getHeading();
             }
 
             @Override
-            protected boolean isFinished() {
-                return visionPIDController.onTarget();
+            protected void execute() {
+                VisionTarget target = visionTargets.get();
+                if (!target.isUsable(Timer.getFPGATimestamp(), visionMaxAge)) {
+                    hasTarget = false;
+                } else if (target.sequence != lastSequence) {
+                    lastSequence = target.sequence;
+                    setpoint = target.heading + target.correction * visionDegreesPerUnit;
+                    hasTarget = true;
+                }
+                double speed = approachSpeed();
+                if (hasTarget) {
+                    controlLoop.setHeading(speed, setpoint);
+                } else {
+                    controlLoop.setOpenLoop(speed, 0, false);
+                }
             }
 
             @Override
-            protected double returnPIDInput() {
-                if (visionFound.getBoolean(false) == true) {
-                    return visionCorrection.getDouble(0);
-                } else {
-                    visionPIDController.reset();
-                    return 0;
-                }
+            protected boolean isFinished() {
+                return hasTarget && Math.abs(setpoint - getHeading()) < visionTolerance;
             }
 
             @Override
-            protected void usePIDOutput(double visionOutput) {
-                drive.arcadeDrive(.55, -visionOutput);
+            protected void end() {
+                controlLoop.stopMotor();
             }
         };
     }
 
+    /**
+     * How fast to approach a target, slowing down as the Lidar says it is getting
+     * close. Without a recent Lidar reading this is the full approach speed.
+     */
+    private double approachSpeed() {
+        double distance = lidarSampler.getDistance(Timer.getFPGATimestamp(), lidarMaxAge);
+        if (Double.isNaN(distance) || distance >= visionSlowDownDistance) {
+            return visionApproachSpeed;
+        }
+        double fraction = Math.max(0, (distance - visionStopDistance) / (visionSlowDownDistance - visionStopDistance));
+        return visionMinApproachSpeed + (visionApproachSpeed - visionMinApproachSpeed) * fraction;
+    }
+
+    public void setVisionMaxAge(double seconds) {
+        visionMaxAge = seconds;
+    }
+
     public Command extendPiston() {
         return new InstantCommand("Extend Piston", this, () -> {
             climbPiston.set(Value.kForward);
@@ -2,37 +2,99 @@ package frc.robot.subsystems;
 
 import com.chopshop166.chopshoplib.outputs.DigitalOutputDutyCycle;
 import com.mach.LightDrive.Color;
+import com.mach.LightDrive.LightDriveBus;
 import com.mach.LightDrive.LightDriveCAN;
 
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.command.InstantCommand;
 import edu.wpi.first.wpilibj.command.Subsystem;
+import frc.robot.leds.Effect;
+import frc.robot.leds.LedTelemetry;
 
 public class Leds extends Subsystem {
+
+    // Higher layers are drawn over lower ones on the same bank
+    public enum Layer {
+        kBase, kIndicator, kAlert;
+    }
+
+    LightDriveBus ldrive_bus;
     LightDriveCAN ldrive_can;
-    Color seafoam = new Color(150, 238, 150);
-    Color amber = new Color(255, 191, 0);
-    Color harlequin = new Color(43, 255, 0);
-    Color fuschia = new Color(255, 0, 255);
+    LedTelemetry telemetry;
+    private final static int SEAFOAM = 0x96EE96;
+    private final static int AMBER = 0xFFBF00;
+    private final static int HARLEQUIN = 0x2BFF00;
+    private final static int FUSCHIA = 0xFF00FF;
+    private final static int BLUE_ALLIANCE = Color.BLUE;
+    private final static int RED_ALLIANCE = Color.RED;
     private final static int leftBank = 1;
     private final static int rightBank = 2;
     private final static int visionBank = 3;
+    private final static int BANK_COUNT = 4;
+
+    private final Effect[][] effects = new Effect[Layer.values().length][BANK_COUNT + 1];
 
     public Leds() {
         super();
 
         ldrive_can = new LightDriveCAN();
-        ldrive_can.SetColor(leftBank, Color.BLUE, 1.0);
-        ldrive_can.SetColor(rightBank, Color.BLUE, 1.0);
+        ldrive_can.SetColor(leftBank, BLUE_ALLIANCE, 1.0);
+        ldrive_can.SetColor(rightBank, BLUE_ALLIANCE, 1.0);
 
         ldrive_can.Update();
+        ldrive_bus = new LightDriveBus();
+        ldrive_bus.Add(ldrive_can);
+        ldrive_bus.Start(0.02);
+        // Half a second of history, published twice a second
+        telemetry = new LedTelemetry(ldrive_can, "LightDrive", 25, 25);
+
+        setEffect(Layer.kBase, alliance(), leftBank, rightBank);
     }
 
     @Override
     public void initDefaultCommand() {
-        setDefaultCommand(setTeamColor());
+        // The alliance color is drawn on the base layer, so nothing needs to own
+        // the subsystem by default
+    }
+
+    @Override
+    public void periodic() {
+        final double now = Timer.getFPGATimestamp();
+        for (int bank = 1; bank <= BANK_COUNT; bank++) {
+            int color = Color.OFF;
+            for (int layer = effects.length - 1; layer >= 0; layer--) {
+                if (effects[layer][bank] != null) {
+                    color = effects[layer][bank].render(now, bank);
+                    break;
+                }
+            }
+            ldrive_can.SetColor(bank, color);
+        }
+        ldrive_can.Update();
+        telemetry.sample();
+    }
+
+    public void setEffect(Layer layer, Effect effect, Integer... banks) {
+        for (Integer currentBank : banks) {
+            if (currentBank >= 1 && currentBank <= BANK_COUNT) {
+                effects[layer.ordinal()][currentBank] = effect;
+            }
+        }
+    }
+
+    /**
+     * Remove an effect from a layer, leaving any effect that has since replaced it
+     * on a bank alone.
+     */
+    public void clearEffect(Layer layer, Effect effect, Integer... banks) {
+        for (Integer currentBank : banks) {
+            if (currentBank >= 1 && currentBank <= BANK_COUNT && effects[layer.ordinal()][currentBank] == effect) {
+                effects[layer.ordinal()][currentBank] = null;
+            }
+        }
     }
 
     private boolean isBlueTeam() {
@@ -44,169 +106,99 @@ public class Leds extends Subsystem {
         }
     }
 
-    public Command setTeamColor(Integer... banks) {
-
-        return new Command("Set team color", this) {
+    private int allianceColor() {
+        return isBlueTeam() ? BLUE_ALLIANCE : RED_ALLIANCE;
+    }
 
-            protected void initialize() {
-                Color color;
+    public Effect alliance() {
+        return (time, bank) -> allianceColor();
+    }
 
-                if (isBlueTeam()) {
-                    color = Color.BLUE;
+    public Effect allianceFade(int other, double frequency) {
+        return (time, bank) -> Effect.blend(allianceColor(), other, Effect.breatheLevel(time, frequency));
+    }
 
-                } else {
-                    color = Color.RED;
-                }
-                for (Integer currentBank : banks) {
-                    ldrive_can.SetColor(currentBank, color, 1.0);
+    /**
+     * Show an effect on a layer for as long as the command runs.
+     */
+    public Command show(String name, Layer layer, Effect effect, Integer... banks) {
+        return new Command(name) {
 
-                }
-                ldrive_can.Update();
+            @Override
+            protected void initialize() {
+                setEffect(layer, effect, banks);
             }
 
             @Override
             protected boolean isFinished() {
                 return false;
             }
-        };
-    }
-
-    public Command turnOnGreen(Integer... banks) {
-        return new Command("Green On", this) {
 
             @Override
-            protected void execute() {
-                for (Integer currentBank : banks) {
-                    ldrive_can.SetColor(currentBank, Color.GREEN, 1.0);
-                }
-                ldrive_can.Update();
+            protected void end() {
+                clearEffect(layer, effect, banks);
             }
 
             @Override
-            protected boolean isFinished() {
-                return false;
+            protected void interrupted() {
+                end();
             }
         };
     }
 
-    public Command turnOnRed(Integer... banks) {
-        return new Command("Red On", this) {
+    public Command setTeamColor(Integer... banks) {
+        return new InstantCommand("Set team color", () -> {
+            setEffect(Layer.kBase, alliance(), banks);
+        });
+    }
 
-            @Override
-            protected void execute() {
-                for (Integer currentBank : banks) {
-                    ldrive_can.SetColor(currentBank, Color.RED, 1.0);
-                }
-                ldrive_can.Update();
-            }
+    public Command turnOnGreen(Integer... banks) {
+        return new InstantCommand("Green On", () -> {
+            setEffect(Layer.kBase, Effect.solid(Color.GREEN), banks);
+        });
+    }
 
-            @Override
-            protected boolean isFinished() {
-                return false;
-            }
-        };
+    public Command turnOnRed(Integer... banks) {
+        return new InstantCommand("Red On", () -> {
+            setEffect(Layer.kBase, Effect.solid(Color.RED), banks);
+        });
     }
 
     public Command turnOnBlue(Integer... banks) {
-        return new Command("Blue On", this) {
-
-            @Override
-            protected void execute() {
-                for (Integer currentBank : banks) {
-                    ldrive_can.SetColor(currentBank, Color.BLUE, 1.0);
-                }
-                ldrive_can.Update();
-            }
-
-            @Override
-            protected boolean isFinished() {
-                return false;
-            }
-        };
+        return new InstantCommand("Blue On", () -> {
+            setEffect(Layer.kBase, Effect.solid(Color.BLUE), banks);
+        });
     }
 
     public Command killAllLights(Integer... banks) {
-        return new Command("Lights Off", this) {
-
-            @Override
-            protected void execute() {
-                for (Integer currentBank : banks) {
-                    ldrive_can.SetColor(currentBank, Color.OFF, 1.0);
-                }
-                ldrive_can.Update();
-            }
-
-            @Override
-            protected boolean isFinished() {
-                return false;
-            }
-        };
+        return new InstantCommand("Lights Off", () -> {
+            setEffect(Layer.kBase, Effect.solid(Color.OFF), banks);
+        });
     }
 
-    public Command blinkLights(Color color, int frequency, Integer... banks) {
-        return new Command("Blink Lights", this) {
-            int counter = 0;
-            boolean lightsOn = true;
-            Color color;
-
-            @Override
-
-            protected void initialize() {
-                counter = 0;
-                lightsOn = true;
-            }
-
-            @Override
-            protected void execute() {
-                if (counter % frequency == 0) {
-                    if (lightsOn == true) {
-                        color = Color.BLUE;
-                        lightsOn = false;
-                    } else {
-                        color = Color.OFF;
-                        lightsOn = false;
-                    }
-                }
-                for (Integer currentBank : banks) {
-                    ldrive_can.SetColor(currentBank, color, 1.0);
-                }
-                ldrive_can.Update();
-                counter++;
-            }
+    /**
+     * Fade the drive banks between the alliance color and green while a
+     * gamepiece is held, over whatever the base layer shows.
+     */
+    public Command showGamepiece() {
+        return show("Gamepiece", Layer.kIndicator, allianceFade(HARLEQUIN, 1), leftBank, rightBank);
+    }
 
-            @Override
-            protected boolean isFinished() {
-                return false;
-            }
-        };
+    public Command blinkLights(int color, double frequency, Integer... banks) {
+        return show("Blink Lights", Layer.kAlert, Effect.blink(color, frequency), banks);
     }
 
-    public Command justBreathe(DigitalOutputDutyCycle color, int frequency) {
-        return new Command("Breathe", this) {
-            boolean isDutyCycleIncreasing = true;
-            double period;
-            final double executePeriod = 20 * 0.001; // Approx how often execute is called
-            final double dutyCycleChangePerPeriod = 2.0;
-            double changeAmount;
+    public Command justBreathe(DigitalOutputDutyCycle color, double frequency) {
+        return new Command("Breathe") {
 
             @Override
             protected void initialize() {
-                period = (1.0 / frequency);
-                changeAmount = dutyCycleChangePerPeriod / ((period / executePeriod));
                 color.enablePWM(0);
-                isDutyCycleIncreasing = true;
             }
 
             @Override
             protected void execute() {
-                if (isDutyCycleIncreasing == true) {
-                    color.updateDutyCycle(color.getPWMRate() + changeAmount);
-                } else {
-                    color.updateDutyCycle(color.getPWMRate() - changeAmount);
-                }
-                if ((color.getPWMRate() >= 1) || (color.getPWMRate() <= 0)) {
-                    isDutyCycleIncreasing = !isDutyCycleIncreasing;
-                }
+                color.updateDutyCycle(Effect.breatheLevel(Timer.getFPGATimestamp(), frequency));
             }
 
             @Override
@@ -226,48 +218,18 @@ public class Leds extends Subsystem {
     }
 
     public Command turnOnVisionLights() {
-        return new InstantCommand("Vision Light On", this, () -> {
-            ldrive_can.SetColor(visionBank, Color.GREEN, 1);
+        return new InstantCommand("Vision Light On", () -> {
+            setEffect(Layer.kBase, Effect.solid(Color.GREEN), visionBank);
         });
     }
 
     public Command turnOffVisionLights() {
-        return new InstantCommand("Vision Light Off", this, () -> {
-            ldrive_can.SetColor(visionBank, Color.OFF, 1);
+        return new InstantCommand("Vision Light Off", () -> {
+            setEffect(Layer.kBase, Effect.solid(Color.OFF), visionBank);
         });
     }
 
-    public Command blinkVisionLights(int frequency) {
-        return new Command("Blink Vision Lights", this) {
-            int counter = 0;
-            boolean lightsOn = true;
-
-            @Override
-            protected void initialize() {
-                counter = 0;
-                ldrive_can.SetColor(visionBank, Color.GREEN, 1.0);
-                lightsOn = true;
-            }
-
-            @Override
-            protected void execute() {
-                if (counter % frequency == 0) {
-                    if (lightsOn == true) {
-                        ldrive_can.SetColor(visionBank, Color.OFF, 1.0);
-                        lightsOn = false;
-                    } else {
-                        ldrive_can.SetColor(visionBank, Color.GREEN, 1.0);
-                        lightsOn = false;
-                    }
-                }
-                ldrive_can.Update();
-                counter++;
-            }
-
-            @Override
-            protected boolean isFinished() {
-                return false;
-            }
-        };
+    public Command blinkVisionLights(double frequency) {
+        return show("Blink Vision Lights", Layer.kAlert, Effect.blink(Color.GREEN, frequency), visionBank);
     }
 }
@@ -1,34 +1,66 @@
 package frc.robot.subsystems;
 
+import java.io.IOException;
+import java.util.function.DoubleSupplier;
+
 import com.chopshop166.chopshoplib.sensors.SparkMaxCounter;
+import com.revrobotics.CANPIDController;
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.ControlType;
 
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.DoubleSolenoid.Value;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.GenericHID.Hand;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.command.InstantCommand;
-import edu.wpi.first.wpilibj.command.PIDCommand;
 import edu.wpi.first.wpilibj.command.Subsystem;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Robot;
 import frc.robot.RobotMap;
+import frc.robot.outputs.FilteredSolenoid;
+import frc.robot.outputs.FilteredSpeedController;
+import frc.robot.power.CurrentBudget;
+import frc.robot.util.GainSchedule;
+import frc.robot.util.InputShaper;
+import frc.robot.util.TrapezoidProfile;
 
 public class LiftSubsystem extends Subsystem {
     private CANSparkMax motor;
+    private CANPIDController motorPID;
     private DoubleSolenoid brake;
+    // Writes go through these so unchanged values don't hit the CAN bus or PCM
+    // every loop
+    private FilteredSpeedController motorOutput;
+    private FilteredSolenoid brakeOutput;
     private SparkMaxCounter heightEncoder;
     private DigitalInput lowerLimit;
     private DigitalInput upperLimit;
+    private CurrentBudget.Consumer power;
+    // Slots in the sensor snapshot
+    private int heightSensor;
+    private int lowerLimitSensor;
+    private int upperLimitSensor;
 
     public LiftSubsystem(final RobotMap.LiftMap map) {
         super();
         motor = map.getMotor();
         brake = map.getBrake();
+        motorOutput = new FilteredSpeedController(motor, "Lift Motor");
+        brakeOutput = new FilteredSolenoid(brake, "Lift Brake");
         heightEncoder = new SparkMaxCounter(motor.getEncoder());
+        motorPID = motor.getPIDController();
+        configureSmartMotion();
+        gains = loadGains();
         lowerLimit = map.getLowerLimit();
         upperLimit = map.getUpperLimit();
+        power = Robot.power.register("Lift", 2, 60);
+        heightSensor = Robot.sensors.addDouble(heightEncoder::getDistance);
+        lowerLimitSensor = Robot.sensors.addBoolean(lowerLimit::get);
+        upperLimitSensor = Robot.sensors.addBoolean(upperLimit::get);
         addChildren();
         registeredCommands();
     }
@@ -42,6 +74,10 @@ public class LiftSubsystem extends Subsystem {
     }
 
     private void registeredCommands() {
+        SmartDashboard.putData("Reload Lift Gains", new InstantCommand("Reload Lift Gains", () -> {
+            gains = loadGains();
+        }));
+
         SmartDashboard.putData("Loading Station", goToHeight(Heights.kLoadingStation));
         SmartDashboard.putData("Rocket Hatch Mid", goToHeight(Heights.kRocketHatchMid));
         SmartDashboard.putData("Rocket Hatch High", goToHeight(Heights.kRocketHatchHigh));
@@ -96,26 +132,117 @@ public class LiftSubsystem extends Subsystem {
         }
     }
 
+    private void configureSmartMotion() {
+        motorPID.setP(SMART_MOTION_KP, SMART_MOTION_SLOT);
+        motorPID.setI(0, SMART_MOTION_SLOT);
+        motorPID.setD(0, SMART_MOTION_SLOT);
+        motorPID.setFF(SMART_MOTION_KFF, SMART_MOTION_SLOT);
+        motorPID.setOutputRange(-1, 1, SMART_MOTION_SLOT);
+        motorPID.setSmartMotionMaxVelocity(SMART_MOTION_MAX_VELOCITY, SMART_MOTION_SLOT);
+        motorPID.setSmartMotionMinOutputVelocity(0, SMART_MOTION_SLOT);
+        motorPID.setSmartMotionMaxAccel(SMART_MOTION_MAX_ACCELERATION, SMART_MOTION_SLOT);
+        motorPID.setSmartMotionAllowedClosedLoopError(SMART_MOTION_ALLOWED_ERROR, SMART_MOTION_SLOT);
+    }
+
+    private GainSchedule loadGains() {
+        try {
+            return GainSchedule.fromCsv(Filesystem.getDeployDirectory().toPath().resolve(GAINS_FILE), GAIN_COUNT);
+        } catch (IOException e) {
+            DriverStation.reportError("Could not load lift gains, using defaults: " + e.getMessage(), false);
+            return DEFAULT_GAINS;
+        }
+    }
+
     protected void restrictedMotorSet(double liftSpeed) {
-        if (liftSpeed > 0 && !upperLimit.get()) {
+        restrictedMotorSet(liftSpeed, Math.abs(liftSpeed) > 0.05);
+    }
+
+    // Releases the brake only while moving is set and the limits leave the motor
+    // something to do. Profiled moves decide this from the move instead of the
+    // output, which is mostly gravity feedforward near the threshold.
+    private void restrictedMotorSet(double liftSpeed, boolean moving) {
+        if (liftSpeed > 0 && isAtUpperLimit()) {
             liftSpeed = 0;
 
         }
-        if (liftSpeed < 0 && !lowerLimit.get()) {
+        if (liftSpeed < 0 && isAtLowerLimit()) {
             liftSpeed = 0;
             heightEncoder.reset();
+            // The snapshot still has the height from before the reset
+            lastHeightTime = Double.NaN;
 
         }
-        if (Math.abs(liftSpeed) <= 0.05) {
-            brake.set(Value.kForward);
+        liftSpeed = power.limit(liftSpeed);
+        if (moving && liftSpeed != 0) {
+            brakeOutput.set(Value.kReverse);
         } else {
-            brake.set(Value.kReverse);
+            brakeOutput.set(Value.kForward);
         }
-        motor.set(liftSpeed);
+        motorOutput.set(liftSpeed);
     }
 
-    private final static double AUTO_LIFT_SPEED_UP = 0.5;
-    private final static double AUTO_LIFT_SPEED_DOWN = -0.4;
+    // Profiled moves, in height units and seconds. The feedforward gains are
+    // output per unit/s and unit/s^2, the feedback gain is output per unit.
+    private final static double PROFILE_MAX_VELOCITY = 60;
+    private final static double PROFILE_MAX_ACCELERATION = 120;
+    private final static double PROFILE_KV = 0.012;
+    private final static double PROFILE_KA = 0.001;
+    private final static double PROFILE_POSITION_TOLERANCE = 1.0;
+    private final static double PROFILE_VELOCITY_TOLERANCE = 2.0;
+    private final static double PROFILE_TIMEOUT = 1.0;
+
+    // Feedback and feedforward gains by height, from a deploy file so they can
+    // be tuned without a rebuild
+    private final static String GAINS_FILE = "lift-gains.csv";
+    private final static int GAIN_KP = 0;
+    private final static int GAIN_KI = 1;
+    private final static int GAIN_KG = 2;
+    private final static int GAIN_KS = 3;
+    private final static int GAIN_COUNT = 4;
+    private final static GainSchedule DEFAULT_GAINS = new GainSchedule(new double[] { 0, 90 },
+            new double[][] { { 0.05, 0, 0.04, 0.03 }, { 0.06, 0, 0.07, 0.04 } });
+    // Limit on the integral, in height unit seconds
+    private final static double MAX_INTEGRAL = 10;
+
+    private GainSchedule gains;
+
+    // Smart Motion on the SparkMax, in motor rotations and RPM
+    private final static int SMART_MOTION_SLOT = 0;
+    private final static double SMART_MOTION_KP = 5e-5;
+    private final static double SMART_MOTION_KFF = 1.0 / 5676;
+    private final static double SMART_MOTION_MAX_VELOCITY = 3600;
+    private final static double SMART_MOTION_MAX_ACCELERATION = 7200;
+    private final static double SMART_MOTION_ALLOWED_ERROR = 0.5;
+    private final static double SMART_MOTION_TOLERANCE = 1.0;
+    private final static double SMART_MOTION_TIMEOUT = 4.0;
+    // Only resend the output range when the budget's cap moves this much
+    private final static double OUTPUT_RANGE_STEP = 0.05;
+
+    // The profiled move in progress, or null when there isn't one
+    private TrapezoidProfile activeMove;
+    private double activeMoveStart;
+    private final double[] committedSetpoint = new double[3];
+
+    // Estimated from the height every loop
+    private double height;
+    private double heightVelocity;
+    private double lastHeightTime = Double.NaN;
+
+    // Compensated to 12V so the lift holds the same speed against gravity as the
+    // battery sags
+    private final InputShaper liftShaper = new InputShaper().withDeadband(.1).withSlewRate(4)
+            .withVoltageCompensation(12);
+
+    @Override
+    public void periodic() {
+        final double now = Robot.sensors.getTimestamp();
+        final double newHeight = Robot.sensors.getDouble(heightSensor);
+        if (!Double.isNaN(lastHeightTime) && now > lastHeightTime) {
+            heightVelocity = (newHeight - height) / (now - lastHeightTime);
+        }
+        height = newHeight;
+        lastHeightTime = now;
+    }
 
     @Override
     public void initDefaultCommand() {
@@ -123,53 +250,100 @@ public class LiftSubsystem extends Subsystem {
         setDefaultCommand(moveLift());
     }
 
+    // The profile a move from the current height would follow
+    private TrapezoidProfile planMove(double goal) {
+        return new TrapezoidProfile(PROFILE_MAX_VELOCITY, PROFILE_MAX_ACCELERATION, height, heightVelocity, goal);
+    }
+
+    /**
+     * The lowest height the lift is committed to at a time from now. While it
+     * is tracking a profiled move that is the move's height less the tracking
+     * tolerance, otherwise it is where the lift is now.
+     *
+     * @param t Seconds from now.
+     */
+    public double getCommittedHeight(double t) {
+        if (activeMove != null) {
+            double elapsed = Timer.getFPGATimestamp() - activeMoveStart;
+            activeMove.sample(elapsed, committedSetpoint);
+            if (Math.abs(committedSetpoint[TrapezoidProfile.POSITION] - height) <= PROFILE_POSITION_TOLERANCE) {
+                activeMove.sample(elapsed + t, committedSetpoint);
+                return committedSetpoint[TrapezoidProfile.POSITION] - PROFILE_POSITION_TOLERANCE;
+            }
+        }
+        return height;
+    }
+
     protected boolean isAtUpperLimit() {
-        return !upperLimit.get();
+        return !Robot.sensors.getBoolean(upperLimitSensor);
     }
 
     protected boolean isAtLowerLimit() {
-        return !lowerLimit.get();
+        return !Robot.sensors.getBoolean(lowerLimitSensor);
     }
 
     public Command engageBrake() {
         return new InstantCommand("Engage Brake", this, () -> {
-            brake.set(Value.kForward);
+            brakeOutput.set(Value.kForward);
         });
     }
 
     public Command disengageBrake() {
         return new InstantCommand("Disengage Brake", this, () -> {
-            brake.set(Value.kReverse);
+            brakeOutput.set(Value.kReverse);
         });
     }
 
     public Command autoMoveLift(Heights target) {
-        return new PIDCommand("Auto Move Lift", .0016, 0.0002, 0, 0, this) {
+        // The SparkMax runs the loop itself with Smart Motion, so this only
+        // releases the brake, watches the limit switches and waits for it to
+        // arrive
+        return new Command("Auto Move Lift", this) {
+            double outputRange;
+            boolean stopped;
+
             @Override
             protected void initialize() {
-                brake.set(Value.kReverse);
-                setSetpoint(target.value);
-                getPIDController().setAbsoluteTolerance(4);
+                // The reference is in the controller's own encoder counts, which
+                // don't move when the height is zeroed
+                double offset = motor.getEncoder().getPosition() - heightEncoder.getDistance();
+                brakeOutput.set(Value.kReverse);
+                outputRange = 1;
+                motorPID.setOutputRange(-outputRange, outputRange, SMART_MOTION_SLOT);
+                motorPID.setReference(target.get() + offset, ControlType.kSmartMotion, SMART_MOTION_SLOT);
+                // The next duty cycle write has to go through to end Smart Motion
+                motorOutput.invalidate();
+                stopped = false;
             }
 
             @Override
-            protected void usePIDOutput(final double heightCorrection) {
-                restrictedMotorSet(heightCorrection);
+            protected void execute() {
+                if ((target.get() > height && isAtUpperLimit()) || (target.get() < height && isAtLowerLimit())) {
+                    restrictedMotorSet(0);
+                    stopped = true;
+                    return;
+                }
+                // Keep the controller inside the lift's share of the current budget
+                power.limit(motor.getAppliedOutput());
+                double cap = power.getCap();
+                if (Math.abs(cap - outputRange) > OUTPUT_RANGE_STEP) {
+                    outputRange = cap;
+                    motorPID.setOutputRange(-outputRange, outputRange, SMART_MOTION_SLOT);
+                }
             }
 
             @Override
             protected void end() {
                 restrictedMotorSet(0);
-            }
-
-            @Override
-            protected double returnPIDInput() {
-                return heightEncoder.get();
+                motorPID.setOutputRange(-1, 1, SMART_MOTION_SLOT);
             }
 
             @Override
             protected boolean isFinished() {
-                return getPIDController().onTarget();
+                return stopped
+                        || (Math.abs(target.get() - height) < SMART_MOTION_TOLERANCE
+                                && Math.abs(heightVelocity) < PROFILE_VELOCITY_TOLERANCE)
+                        || timeSinceInitialized() > SMART_MOTION_TIMEOUT;
             }
         };
     }
@@ -179,12 +353,9 @@ public class LiftSubsystem extends Subsystem {
         return new Command("Move Lift", this) {
             @Override
             protected void execute() {
-                SmartDashboard.putNumber("Lift Height", heightEncoder.getDistance());
-                double liftSpeed = Robot.xBoxCoPilot.getTriggerAxis(Hand.kRight)
-                        - Robot.xBoxCoPilot.getTriggerAxis(Hand.kLeft);
-                if (Math.abs(liftSpeed) <= .1) {
-                    liftSpeed = 0;
-                }
+                SmartDashboard.putNumber("Lift Height", height);
+                double liftSpeed = liftShaper.calculate(Robot.xBoxCoPilot.getTriggerAxis(Hand.kRight)
+                        - Robot.xBoxCoPilot.getTriggerAxis(Hand.kLeft));
                 restrictedMotorSet(liftSpeed);
             }
 
@@ -201,60 +372,77 @@ public class LiftSubsystem extends Subsystem {
     }
 
     public Command goToHeight(Heights target) {
-        // The command is named "Go to a Specific Height" and requires this subsystem.
-        return new Command("Go to a Specific Height", this) {
-            @Override
-            protected void execute() {
-                double currentHeight = heightEncoder.getDistance();
-                SmartDashboard.putNumber("Lift Height", currentHeight);
-                if (currentHeight < target.get()) {
-                    restrictedMotorSet(AUTO_LIFT_SPEED_UP);
-                } else {
-                    restrictedMotorSet(AUTO_LIFT_SPEED_DOWN);
-                }
-            }
+        return profiledMove("Go to a Specific Height", target::get);
+    }
 
-            @Override
-            protected boolean isFinished() {
-                // Make this return true when this Command no longer needs to run execute()
-                double currentHeight = heightEncoder.getDistance();
-                if (Math.abs(target.get() - currentHeight) < 1.0 || (target.get() > currentHeight && !upperLimit.get())
-                        || (target.get() < currentHeight && !lowerLimit.get())) {
-                    return true;
-                } else {
-                    return false;
-                }
-            }
+    public Command goToAtLeast(Heights target) {
+        // Only moves up, and leaves the lift alone if it's already high enough.
+        // Aims past the target by the tolerance so it never settles below it.
+        return profiledMove("Go at Least to a Specific Height",
+                () -> Math.max(height, target.get() + PROFILE_POSITION_TOLERANCE));
+    }
+
+    private Command profiledMove(String name, DoubleSupplier target) {
+        // Follows a trapezoidal profile from the current height to the target,
+        // with velocity, acceleration, gravity and friction feedforward and
+        // feedback gains scheduled by height. The brake stays off until the lift
+        // has settled and the command ends.
+        return new Command(name, this) {
+            final double[] setpoint = new double[3];
+            final double[] gain = new double[GAIN_COUNT];
+            TrapezoidProfile profile;
+            double goal;
+            double startTime;
+            double lastTime;
+            double integral;
 
             @Override
-            protected void end() {
-                // Called once after isFinished returns true
-                restrictedMotorSet(0);
+            protected void initialize() {
+                goal = target.getAsDouble();
+                profile = planMove(goal);
+                startTime = Timer.getFPGATimestamp();
+                activeMove = profile;
+                activeMoveStart = startTime;
+                lastTime = startTime;
+                integral = 0;
             }
-        };
-    }
 
-    public Command goToAtLeast(Heights target) {
-        // The command is named "Go to a Specific Height" and requires this subsystem.
-        return new Command("Go at Least to a Specific Height", this) {
             @Override
             protected void execute() {
-                restrictedMotorSet(AUTO_LIFT_SPEED_UP);
+                SmartDashboard.putNumber("Lift Height", height);
+                double now = Timer.getFPGATimestamp();
+                profile.sample(now - startTime, setpoint);
+                gains.get(height, gain);
+
+                double error = setpoint[TrapezoidProfile.POSITION] - height;
+                integral = Math.max(-MAX_INTEGRAL, Math.min(MAX_INTEGRAL, integral + error * (now - lastTime)));
+                lastTime = now;
+
+                restrictedMotorSet(PROFILE_KV * setpoint[TrapezoidProfile.VELOCITY]
+                        + PROFILE_KA * setpoint[TrapezoidProfile.ACCELERATION]
+                        + gain[GAIN_KG] + gain[GAIN_KS] * Math.signum(setpoint[TrapezoidProfile.VELOCITY])
+                        + gain[GAIN_KP] * error + gain[GAIN_KI] * integral, true);
             }
 
             @Override
             protected boolean isFinished() {
-                // Make this return true when this Command no longer needs to run execute()
-                double currentHeight = heightEncoder.getDistance();
-                if (currentHeight > target.get()) {
+                double elapsed = Timer.getFPGATimestamp() - startTime;
+                if ((goal > height && isAtUpperLimit()) || (goal < height && isAtLowerLimit())) {
                     return true;
-                } else {
+                }
+                if (elapsed < profile.getDuration()) {
                     return false;
                 }
+                return (Math.abs(goal - height) < PROFILE_POSITION_TOLERANCE
+                        && Math.abs(heightVelocity) < PROFILE_VELOCITY_TOLERANCE)
+                        || elapsed > profile.getDuration() + PROFILE_TIMEOUT;
             }
 
             @Override
             protected void end() {
+                if (activeMove == profile) {
+                    activeMove = null;
+                }
                 restrictedMotorSet(0);
             }
         };
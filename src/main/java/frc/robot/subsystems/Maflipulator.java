@@ -1,18 +1,24 @@
 package frc.robot.subsystems;
 
+import java.util.function.DoubleUnaryOperator;
+
 import com.chopshop166.chopshoplib.outputs.SendableSpeedController;
 
 import edu.wpi.first.wpilibj.GenericHID.Hand;
-import edu.wpi.first.wpilibj.PIDController;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.command.ConditionalCommand;
 import edu.wpi.first.wpilibj.command.InstantCommand;
-import edu.wpi.first.wpilibj.command.PIDCommand;
 import edu.wpi.first.wpilibj.command.Subsystem;
 import edu.wpi.first.wpilibj.interfaces.Potentiometer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Robot;
 import frc.robot.RobotMap;
+import frc.robot.flip.FlipController;
+import frc.robot.flip.FlipEnvelope;
+import frc.robot.outputs.FilteredSpeedController;
+import frc.robot.sensors.AngleEstimator;
+import frc.robot.subsystems.LiftSubsystem.Heights;
+import frc.robot.util.InputShaper;
 
 public class Maflipulator extends Subsystem {
 
@@ -37,36 +43,74 @@ public class Maflipulator extends Subsystem {
     private final static double FLIP_MOTOR_SPEED = -1;
     private final static double MANUAL_FLIP_MOTOR_SPEED = -.7;
 
-    private final static double FLIP_RAISING_SPEED = .5;
+    // Stopping on the predicted angle lets the flip raise at full speed
+    private final static double FLIP_RAISING_SPEED = Math.abs(FLIP_MOTOR_SPEED);
     private final static double FLIP_DROPPING_SPEED = .5;
 
     private final static double DEADBAND = .1;
 
+    // Angle filter gains, and how fast the arm slows down with the motor off in
+    // pot units per second squared
+    private final static double ANGLE_ALPHA = .15;
+    private final static double ANGLE_BETA = .005;
+    private final static double ANGLE_DECELERATION = 3;
+
+    // Lowest lift height at which each angle clears the robot. The arm already
+    // works in each side's band between the lower and upper angles with the
+    // lift on the floor, so those need no height. Outside them the clearance
+    // hasn't been measured, so everything between the bands needs the full
+    // flip height. The flip can start while the lift is still rising, as long
+    // as the lift reaches that height by the time the arm leaves its band.
+    private final static double ENVELOPE_EDGE = 1e-6;
+    private final static FlipEnvelope ENVELOPE = new FlipEnvelope(
+            new double[] { BACK_UPPER_ANGLE, BACK_UPPER_ANGLE + ENVELOPE_EDGE, FRONT_UPPER_ANGLE - ENVELOPE_EDGE,
+                    FRONT_UPPER_ANGLE },
+            new double[] { 0, Heights.kLiftFlipHeight.get(), Heights.kLiftFlipHeight.get(), 0 }, 0, 1, 200);
+    // How finely to check a planned flip against the envelope, in seconds
+    private final static double PLAN_STEP = 0.02;
+
     private MaflipulatorSide currentPosition;
 
+    // The stick used to be scaled before squaring, so the scale is squared too
+    private final InputShaper flipShaper = new InputShaper().withDeadband(DEADBAND).withExpo(2)
+            .withScale(MANUAL_FLIP_MOTOR_SPEED * Math.abs(MANUAL_FLIP_MOTOR_SPEED));
+
     private SendableSpeedController flipMotor;
+    // Owns the flip motor, every output goes through it
+    private FlipController flipOutput;
     private Potentiometer anglePot;
-
-    double angleCorrection;
-    PIDController anglePID;
+    private AngleEstimator angleEstimator;
+    // Slots for the filtered and stopping angles in the sensor snapshot
+    private int angleSensor;
+    private int stoppingAngleSensor;
+    // The lowest height the lift is committed to at a time from now, null until
+    // the lift is set
+    private DoubleUnaryOperator liftHeight;
 
     public Maflipulator(final RobotMap.MaflipulatorMap map) {
         super();
         flipMotor = map.getFlipMotor();
         anglePot = map.getMaflipulatorPot();
+        angleEstimator = new AngleEstimator(anglePot, ANGLE_ALPHA, ANGLE_BETA, ANGLE_DECELERATION);
+        flipOutput = new FlipController(new FilteredSpeedController(flipMotor, "Flip Motor"), angleEstimator,
+                VERTICAL_ANGLE, BACK_SCORING_ANGLE, FRONT_SCORING_ANGLE);
+        flipOutput.start(0.005);
+        angleSensor = Robot.sensors.addDouble(angleEstimator::getAngle);
+        stoppingAngleSensor = Robot.sensors.addDouble(angleEstimator::getStoppingAngle);
 
-        anglePID = new PIDController(.01, .0009, 0.0, 0.0, anglePot, (double value) -> {
-            angleCorrection = value;
-        });
-
-        if (anglePot.get() > VERTICAL_ANGLE)
-            currentPosition = MaflipulatorSide.kFront;
-        else
-            currentPosition = MaflipulatorSide.kBack;
+        updateSide();
 
         addChildren();
     }
 
+    /**
+     * Give the Maflipulator the lift, which it checks before crossing over
+     * vertical. Until this is called it never crosses on its own.
+     */
+    public void setLift(LiftSubsystem lift) {
+        liftHeight = lift::getCommittedHeight;
+    }
+
     public void addChildren() {
         addChild(flipMotor);
         addChild(anglePot);
@@ -78,21 +122,52 @@ public class Maflipulator extends Subsystem {
         setDefaultCommand(pressRotate());
     }
 
+    private double getAngle() {
+        return Robot.sensors.getDouble(angleSensor);
+    }
+
+    // Where the arm would stop if the motor were cut now
+    private double getStoppingAngle() {
+        return Robot.sensors.getDouble(stoppingAngleSensor);
+    }
+
+    private void updateSide() {
+        if (getAngle() > VERTICAL_ANGLE) {
+            currentPosition = MaflipulatorSide.kFront;
+        } else {
+            currentPosition = MaflipulatorSide.kBack;
+        }
+    }
+
+    // Whether the lift is committed to staying high enough for the whole move
+    private boolean isClearToMove(double target) {
+        return liftHeight != null && ENVELOPE.isClear(liftHeight, flipOutput.planMove(target), PLAN_STEP);
+    }
+
+    // The same limits restrict() puts on the current side, for position targets
+    private double limitToSide(double angle) {
+        if (currentPosition == MaflipulatorSide.kFront) {
+            return Math.max(FRONT_UPPER_ANGLE, Math.min(FRONT_LOWER_ANGLE, angle));
+        }
+        return Math.max(BACK_LOWER_ANGLE, Math.min(BACK_UPPER_ANGLE, angle));
+    }
+
     protected double restrict(double flipSpeed) {
+        double stoppingAngle = getStoppingAngle();
         if (currentPosition == MaflipulatorSide.kFront) {
-            if (flipSpeed > 0 && anglePot.get() <= FRONT_UPPER_ANGLE) {
+            if (flipSpeed > 0 && stoppingAngle <= FRONT_UPPER_ANGLE) {
                 flipSpeed = 0;
-            } else if (flipSpeed < 0 && anglePot.get() >= FRONT_LOWER_ANGLE) {
+            } else if (flipSpeed < 0 && stoppingAngle >= FRONT_LOWER_ANGLE) {
                 flipSpeed = 0;
             }
         } else {
-            if (flipSpeed < 0 && anglePot.get() >= BACK_UPPER_ANGLE) {
+            if (flipSpeed < 0 && stoppingAngle >= BACK_UPPER_ANGLE) {
                 flipSpeed = 0;
-            } else if (flipSpeed > 0 && anglePot.get() <= BACK_LOWER_ANGLE) {
+            } else if (flipSpeed > 0 && stoppingAngle <= BACK_LOWER_ANGLE) {
                 flipSpeed = 0;
             }
         }
-        SmartDashboard.putNumber("Pot Angle", anglePot.get());
+        SmartDashboard.putNumber("Pot Angle", getAngle());
         return flipSpeed;
 
     }
@@ -109,7 +184,7 @@ public class Maflipulator extends Subsystem {
                 if (Math.abs(flipSpeed) < DEADBAND) {
                     flipSpeed = 0;
                 }
-                flipMotor.set(flipSpeed);
+                flipOutput.setOutput(flipSpeed);
                 SmartDashboard.putString("Side", currentPosition.toString());
                 SmartDashboard.putNumber("Flip Speed", flipSpeed);
             }
@@ -128,13 +203,12 @@ public class Maflipulator extends Subsystem {
 
             @Override
             protected void execute() {
-                double flipSpeed = Robot.xBoxCoPilot.getY(Hand.kLeft) * MANUAL_FLIP_MOTOR_SPEED;
-                flipSpeed *= Math.abs(flipSpeed);
+                double flipSpeed = flipShaper.calculate(Robot.xBoxCoPilot.getY(Hand.kLeft));
                 // flipSpeed = restrict(flipSpeed);
-                if (Math.abs(flipSpeed) < DEADBAND) {
-                    flipSpeed = 0;
+                // Leave a held position alone until the stick moves
+                if (flipSpeed != 0 || !flipOutput.isHolding()) {
+                    flipOutput.setOutput(flipSpeed);
                 }
-                flipMotor.set(flipSpeed);
             }
 
             @Override
@@ -161,16 +235,16 @@ public class Maflipulator extends Subsystem {
             protected void execute() {
 
                 if (currentPosition == MaflipulatorSide.kFront) {
-                    if (anglePot.get() <= VERTICAL_ANGLE) {
-                        flipMotor.set(FLIP_DROPPING_SPEED);
+                    if (getAngle() <= VERTICAL_ANGLE) {
+                        flipOutput.setOutput(FLIP_DROPPING_SPEED);
                     } else {
-                        flipMotor.set(FLIP_RAISING_SPEED);
+                        flipOutput.setOutput(FLIP_RAISING_SPEED);
                     }
                 } else {
-                    if (anglePot.get() >= VERTICAL_ANGLE) {
-                        flipMotor.set(-FLIP_DROPPING_SPEED);
+                    if (getAngle() >= VERTICAL_ANGLE) {
+                        flipOutput.setOutput(-FLIP_DROPPING_SPEED);
                     } else {
-                        flipMotor.set(-FLIP_RAISING_SPEED);
+                        flipOutput.setOutput(-FLIP_RAISING_SPEED);
                     }
                 }
             }
@@ -178,11 +252,11 @@ public class Maflipulator extends Subsystem {
             @Override
             protected boolean isFinished() {
 
-                if (anglePot.get() >= FRONT_SCORING_ANGLE && currentPosition == MaflipulatorSide.kBack) {
+                if (getStoppingAngle() >= FRONT_SCORING_ANGLE && currentPosition == MaflipulatorSide.kBack) {
                     return true;
                 }
 
-                if (anglePot.get() <= BACK_SCORING_ANGLE && currentPosition == MaflipulatorSide.kFront) {
+                if (getStoppingAngle() <= BACK_SCORING_ANGLE && currentPosition == MaflipulatorSide.kFront) {
                     return true;
                 }
 
@@ -191,7 +265,7 @@ public class Maflipulator extends Subsystem {
 
             @Override
             protected void end() {
-                flipMotor.set(0);
+                flipOutput.setOutput(0);
                 if (currentPosition == MaflipulatorSide.kFront) {
                     currentPosition = MaflipulatorSide.kBack;
                 } else {
@@ -201,36 +275,79 @@ public class Maflipulator extends Subsystem {
         };
     }
 
-    public Command moveToPosition(double targetPosition) {
-        return new PIDCommand("Move to Position", .01, 0.0, 0.0, this) {
+    /**
+     * Flip to the other side's scoring angle while the lift rises. The flip
+     * starts as soon as the height the lift is committed to keeps the arm inside
+     * the envelope for the whole flip, and waits for the lift otherwise. With a
+     * profiled lift move running, that is before the lift gets to the flip
+     * height. This doesn't move the lift, so on its own it waits until something
+     * else does. The arm holds its last target when this ends.
+     */
+    public Command coordinatedFlip() {
+        return new Command("Coordinated Flip", this) {
+            double target;
+            boolean started;
 
             @Override
             protected void initialize() {
-                anglePID.reset();
-                anglePID.setSetpoint(targetPosition);
-                anglePID.enable();
+                target = currentPosition == MaflipulatorSide.kFront ? FLIP_TO_BACK_POSITION : FLIP_TO_FRONT_POSITION;
+                started = false;
+            }
+
+            @Override
+            protected void execute() {
+                if (started) {
+                    return;
+                }
+                if (isClearToMove(target)) {
+                    flipOutput.setTarget(target);
+                    started = true;
+                }
             }
 
             @Override
             protected boolean isFinished() {
-                return anglePID.onTarget() && Math.abs(angleCorrection) < 0.1;
+                return started && flipOutput.isAtTarget();
             }
 
             @Override
             protected void end() {
-                flipMotor.set(0);
+                updateSide();
+            }
+        };
+    }
+
+    public Command moveToPosition(double targetPosition) {
+        // A target past the current side's limits crosses vertical, so the arm
+        // waits at the limit until the lift is committed to staying clear. The
+        // arm holds its last target when this ends.
+        return new Command("Move to Position", this) {
+            boolean started;
+
+            @Override
+            protected void initialize() {
+                updateSide();
+                double limited = limitToSide(targetPosition);
+                started = limited == targetPosition;
+                flipOutput.setTarget(limited);
             }
 
             @Override
-            protected double returnPIDInput() {
-                return anglePot.pidGet();
+            protected void execute() {
+                if (!started && isClearToMove(targetPosition)) {
+                    flipOutput.setTarget(targetPosition);
+                    started = true;
+                }
             }
 
             @Override
-            protected void usePIDOutput(double output) {
-                double flipSpeed = angleCorrection;
-                flipSpeed = restrict(flipSpeed);
-                flipMotor.set(flipSpeed);
+            protected boolean isFinished() {
+                return started && flipOutput.isAtTarget();
+            }
+
+            @Override
+            protected void end() {
+                updateSide();
             }
         };
     }
@@ -12,30 +12,45 @@ import edu.wpi.first.wpilibj.command.Subsystem;
 import edu.wpi.first.wpilibj.command.TimedCommand;
 import edu.wpi.first.wpilibj.command.WaitCommand;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import frc.robot.Robot;
 import frc.robot.RobotMap;
+import frc.robot.outputs.FilteredSpeedController;
+import frc.robot.power.CurrentBudget;
+import frc.robot.sensors.GamepieceDetector;
 import frc.robot.triggers.LimitSwitchTrigger;
 
 public class Manipulator extends Subsystem {
 
     private SendableSpeedController rollersMotor;
+    private FilteredSpeedController rollersOutput;
     private DoubleSolenoid beaksPiston;
     private DoubleSolenoid armsPiston;
     private DigitalInput gamepieceLimitSwitch;
+    private int gamepieceSensor;
+    private GamepieceDetector gamepieceDetector;
     private DigitalInput foldedBackLimitSwitch;
     private DigitalInput intakePositionLimitSwitch;
     public LimitSwitchTrigger switchTrigger;
+    private CurrentBudget.Consumer power;
+    // The roller speed commands asked for, before the current budget caps it
+    private double rollerDemand;
 
     public Manipulator(final RobotMap.ManipulatorMap map) { // NOPMD
         super();
         // Take values that the subsystem needs from the map, and store them in the
         // class
         rollersMotor = map.getrollersMotor();
+        rollersOutput = new FilteredSpeedController(rollersMotor, "Rollers Motor");
         beaksPiston = map.getbeaksPiston();
         armsPiston = map.getArmsPiston();
         gamepieceLimitSwitch = map.getGamepieceLimitSwitch();
         foldedBackLimitSwitch = map.getfoldedBackLimitSwitch();
         intakePositionLimitSwitch = map.getintakePositionLimitSwitch();
         switchTrigger = new LimitSwitchTrigger(gamepieceLimitSwitch);
+        gamepieceSensor = Robot.sensors.addBoolean(gamepieceLimitSwitch::get);
+        power = Robot.power.register("Rollers", 1, 30);
+        gamepieceDetector = new GamepieceDetector(gamepieceLimitSwitch, this::grabGamepiece);
+        gamepieceDetector.start();
         addChildren();
         SmartDashboard.putData(openBeak());
         SmartDashboard.putData(closeBeak());
@@ -52,6 +67,26 @@ public class Manipulator extends Subsystem {
 
     double rollerspeed = .7;
 
+    // Synchronized with the gamepiece detector's interrupt thread, so a roller
+    // speed can't be written after the detector stopped them
+    private synchronized void setRollers(double speed) {
+        rollerDemand = speed;
+        rollersOutput.set(power.limit(speed));
+    }
+
+    // Called from the interrupt thread when a gamepiece arrives
+    private void grabGamepiece() {
+        setRollers(0);
+        beaksPiston.set(Value.kReverse);
+    }
+
+    @Override
+    public synchronized void periodic() {
+        // The rollers keep running after the command that started them ends, so
+        // the budget's cap is reapplied every loop
+        rollersOutput.set(power.limit(rollerDemand));
+    }
+
     @Override
     public void initDefaultCommand() {
         // Set the default command for a subsystem here.
@@ -62,7 +97,7 @@ public class Manipulator extends Subsystem {
     // #region Command Chains
     public Command pickUpCargo() {
         CommandChain retValue = new CommandChain("Pick up Cargo");
-        retValue.then(openBeak()).then(rollerIntake()).then(retractArms()).then(gamepieceCheck()).then(rollerStop());
+        retValue.then(openBeak()).then(rollerIntake()).then(retractArms()).then(waitForGamepiece()).then(rollerStop());
         return retValue;
     }
 
@@ -82,7 +117,7 @@ public class Manipulator extends Subsystem {
 
     public Command pickUpHatch() {
         CommandChain retValue = new CommandChain("Pick Up Hatch");
-        retValue.then(closeBeak()).then(retractArms()).then(gamepieceCheck()).then(openBeak());
+        retValue.then(closeBeak()).then(retractArms()).then(waitForGamepiece()).then(openBeak());
         return retValue;
     }
 
@@ -115,19 +150,19 @@ public class Manipulator extends Subsystem {
 
     public Command rollerIntake() {
         return new InstantCommand("Intake Rollers", this, () -> {
-            rollersMotor.set(rollerspeed);
+            setRollers(rollerspeed);
         });
     }
 
     public Command rollerEject() {
         return new InstantCommand("Eject Rollers", this, () -> {
-            rollersMotor.set(-rollerspeed);
+            setRollers(-rollerspeed);
         });
     }
 
     public Command rollerStop() {
         return new InstantCommand("Stop Rollers", this, () -> {
-            rollersMotor.set(0);
+            setRollers(0);
         });
     }
 
@@ -137,7 +172,29 @@ public class Manipulator extends Subsystem {
 
             @Override
             protected boolean isFinished() {
-                return gamepieceLimitSwitch.get();
+                return Robot.sensors.getBoolean(gamepieceSensor);
+            }
+        };
+    }
+
+    public Command waitForGamepiece() {
+        // The detector stops the rollers and closes the beak as soon as the
+        // switch is pressed, this just waits to hear about it
+        return new Command("Wait for Gamepiece", this) {
+            @Override
+            protected void initialize() {
+                gamepieceDetector.arm();
+            }
+
+            @Override
+            protected boolean isFinished() {
+                // A gamepiece that was already there never makes an edge
+                return gamepieceDetector.isDetected() || !Robot.sensors.getBoolean(gamepieceSensor);
+            }
+
+            @Override
+            protected void end() {
+                gamepieceDetector.disarm();
             }
         };
     }
@@ -149,7 +206,7 @@ public class Manipulator extends Subsystem {
             @Override
             protected void initialize() {
                 armsPiston.set(Value.kForward);
-                rollersMotor.set(rollerspeed);
+                setRollers(rollerspeed);
             }
 
             @Override
@@ -160,7 +217,7 @@ public class Manipulator extends Subsystem {
             @Override
             protected void end() {
                 armsPiston.set(Value.kReverse);
-                rollersMotor.set(0);
+                setRollers(0);
             }
         };
     }
@@ -170,12 +227,12 @@ public class Manipulator extends Subsystem {
 
             @Override
             protected void initialize() {
-                rollersMotor.set(-rollerspeed);
+                setRollers(-rollerspeed);
             }
 
             @Override
             protected void end() {
-                rollersMotor.set(0);
+                setRollers(0);
             }
         };
     }
@@ -0,0 +1,64 @@
+package frc.robot.util;
+
+/**
+ * Tracks a position and velocity from noisy position measurements. Each
+ * measurement is compared to where the last estimate predicted it would be,
+ * and alpha and beta set how much of that error goes into the position and the
+ * velocity.
+ */
+public class AlphaBetaFilter {
+    private final double alpha;
+    private final double beta;
+    private double position;
+    private double velocity;
+    private double lastTime = Double.NaN;
+
+    /**
+     * @param alpha How much to trust a new position measurement, from 0 to 1.
+     * @param beta  How much of the error to put into the velocity, usually much
+     *              smaller than alpha.
+     */
+    public AlphaBetaFilter(final double alpha, final double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Add a measurement.
+     *
+     * @param measurement The measured position.
+     * @param time        When it was measured, in seconds.
+     */
+    public void update(final double measurement, final double time) {
+        if (Double.isNaN(lastTime)) {
+            reset(measurement, time);
+            return;
+        }
+        final double dt = time - lastTime;
+        if (dt <= 0) {
+            return;
+        }
+        final double predicted = position + velocity * dt;
+        final double residual = measurement - predicted;
+        position = predicted + alpha * residual;
+        velocity += beta * residual / dt;
+        lastTime = time;
+    }
+
+    /**
+     * Start over at a position, at rest.
+     */
+    public void reset(final double measurement, final double time) {
+        position = measurement;
+        velocity = 0;
+        lastTime = time;
+    }
+
+    public double getPosition() {
+        return position;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+}
@@ -0,0 +1,87 @@
+package frc.robot.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A table of controller gains indexed by position, interpolated linearly
+ * between rows. Positions outside the table use the first or last row.
+ */
+public class GainSchedule {
+    private final double[] positions;
+    private final double[][] gains;
+
+    /**
+     * @param positions The position of each row, in increasing order.
+     * @param gains     The gains for each row, all the same length.
+     */
+    public GainSchedule(final double[] positions, final double[][] gains) {
+        if (positions.length == 0 || positions.length != gains.length) {
+            throw new IllegalArgumentException("A gain schedule needs one row of gains per position");
+        }
+        for (int i = 1; i < positions.length; i++) {
+            if (positions[i] <= positions[i - 1] || gains[i].length != gains[0].length) {
+                throw new IllegalArgumentException("Gain schedule rows must be in increasing order and the same size");
+            }
+        }
+        this.positions = positions;
+        this.gains = gains;
+    }
+
+    public int getGainCount() {
+        return gains[0].length;
+    }
+
+    /**
+     * Get the gains at a position.
+     *
+     * @param position The position to look up.
+     * @param out      An array of at least {@link #getGainCount()} elements to
+     *                 fill.
+     */
+    public void get(final double position, final double[] out) {
+        final int last = positions.length - 1;
+        if (position <= positions[0]) {
+            System.arraycopy(gains[0], 0, out, 0, gains[0].length);
+            return;
+        }
+        if (position >= positions[last]) {
+            System.arraycopy(gains[last], 0, out, 0, gains[last].length);
+            return;
+        }
+        int high = 1;
+        while (positions[high] < position) {
+            high++;
+        }
+        final int low = high - 1;
+        final double fraction = (position - positions[low]) / (positions[high] - positions[low]);
+        for (int i = 0; i < gains[low].length; i++) {
+            out[i] = gains[low][i] + (gains[high][i] - gains[low][i]) * fraction;
+        }
+    }
+
+    /**
+     * Read a schedule from a CSV file with one row per line as the position
+     * followed by the gains, in the format {@link NumericCsv} reads.
+     *
+     * @param file      The file to read.
+     * @param gainCount How many gains each row has.
+     */
+    public static GainSchedule fromCsv(final Path file, final int gainCount) throws IOException {
+        final List<double[]> rows = NumericCsv.read(file, gainCount + 1);
+
+        final double[] positions = new double[rows.size()];
+        final double[][] gains = new double[rows.size()][];
+        for (int i = 0; i < rows.size(); i++) {
+            positions[i] = rows.get(i)[0];
+            gains[i] = new double[gainCount];
+            System.arraycopy(rows.get(i), 1, gains[i], 0, gainCount);
+        }
+        try {
+            return new GainSchedule(positions, gains);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+}
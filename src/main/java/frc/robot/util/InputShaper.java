@@ -0,0 +1,107 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Turns a raw driver input into a motor output. The stages run in this order,
+ * and each one is skipped unless it is configured:
+ *
+ * <ol>
+ * <li>Deadband, rescaled so the output still starts from zero at its edge</li>
+ * <li>Expo curve, raising the magnitude to a power</li>
+ * <li>Scale</li>
+ * <li>Slew rate limit, in output per second</li>
+ * <li>Voltage compensation, scaling by a nominal voltage over the battery
+ * voltage</li>
+ * </ol>
+ *
+ * Shaping an input never allocates. The slew stage keeps state, so each input
+ * needs its own shaper, used from one thread.
+ */
+public class InputShaper {
+    private double deadband;
+    private double exponent = 1;
+    private double scale = 1;
+    private double slewRate = Double.POSITIVE_INFINITY;
+    private double nominalVoltage;
+
+    private double lastOutput;
+    private double lastTime = Double.NaN;
+
+    public InputShaper withDeadband(final double deadband) {
+        this.deadband = deadband;
+        return this;
+    }
+
+    /**
+     * @param exponent 1 for linear, 2 for squared inputs.
+     */
+    public InputShaper withExpo(final double exponent) {
+        this.exponent = exponent;
+        return this;
+    }
+
+    public InputShaper withScale(final double scale) {
+        this.scale = scale;
+        return this;
+    }
+
+    /**
+     * @param rate The most the output can change in a second.
+     */
+    public InputShaper withSlewRate(final double rate) {
+        this.slewRate = rate;
+        return this;
+    }
+
+    /**
+     * @param volts The battery voltage the output is meant for, usually 12.
+     */
+    public InputShaper withVoltageCompensation(final double volts) {
+        this.nominalVoltage = volts;
+        return this;
+    }
+
+    /**
+     * Forget the slew rate limiter's last output, so the next output ramps up
+     * from zero.
+     */
+    public void reset() {
+        lastOutput = 0;
+        lastTime = Double.NaN;
+    }
+
+    public double calculate(final double input) {
+        double value = input;
+
+        final double magnitude = Math.abs(value);
+        if (magnitude <= deadband) {
+            value = 0;
+        } else if (deadband > 0) {
+            value = Math.copySign((magnitude - deadband) / (1 - deadband), value);
+        }
+
+        if (exponent != 1) {
+            value = Math.copySign(Math.pow(Math.abs(value), exponent), value);
+        }
+
+        value *= scale;
+
+        if (slewRate != Double.POSITIVE_INFINITY) {
+            final double now = Timer.getFPGATimestamp();
+            final double maxStep = Double.isNaN(lastTime) ? 0 : slewRate * (now - lastTime);
+            value = Math.max(lastOutput - maxStep, Math.min(lastOutput + maxStep, value));
+            lastOutput = value;
+            lastTime = now;
+        }
+
+        if (nominalVoltage > 0) {
+            final double battery = RobotController.getBatteryVoltage();
+            if (battery > 0) {
+                value = Math.max(-1, Math.min(1, value * nominalVoltage / battery));
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,49 @@
+package frc.robot.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV files of numbers, such as paths and gain tables. Blank lines and
+ * lines starting with # or a letter (such as a header) are skipped.
+ */
+public final class NumericCsv {
+    private NumericCsv() {
+    }
+
+    /**
+     * @param file   The file to read.
+     * @param fields How many numbers to read from each row. Extra fields are
+     *               ignored.
+     * @return The rows in file order, each with exactly that many numbers.
+     */
+    public static List<double[]> read(final Path file, final int fields) throws IOException {
+        final List<double[]> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#' || Character.isLetter(line.charAt(0))) {
+                    continue;
+                }
+                final String[] values = line.split(",");
+                if (values.length < fields) {
+                    throw new IOException("Expected " + fields + " fields in " + file + ": " + line);
+                }
+                final double[] row = new double[fields];
+                for (int i = 0; i < fields; i++) {
+                    row[i] = Double.parseDouble(values[i].trim());
+                }
+                rows.add(row);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad number in " + file, e);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,26 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * Something that runs on its own Notifier, off the main robot loop.
+ */
+public abstract class PeriodicLoop {
+    private final Notifier notifier = new Notifier(this::update);
+
+    /**
+     * @param period The loop period in seconds.
+     */
+    public void start(final double period) {
+        notifier.startPeriodic(period);
+    }
+
+    public void stop() {
+        notifier.stop();
+    }
+
+    /**
+     * Run one iteration of the loop, called by the Notifier.
+     */
+    protected abstract void update();
+}
@@ -0,0 +1,68 @@
+package frc.robot.util;
+
+/**
+ * A fixed size buffer of the most recent samples, backed by a primitive array
+ * so adding a sample never allocates.
+ */
+public class RingBuffer {
+    private final double[] samples;
+    private int next;
+    private int count;
+    private double sum;
+
+    public RingBuffer(final int capacity) {
+        samples = new double[capacity];
+    }
+
+    public void add(final double value) {
+        if (count == samples.length) {
+            sum -= samples[next];
+        } else {
+            count++;
+        }
+        samples[next] = value;
+        sum += value;
+        next = (next + 1) % samples.length;
+    }
+
+    public void clear() {
+        next = 0;
+        count = 0;
+        sum = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Get a sample by age, where 0 is the most recent.
+     */
+    public double get(final int age) {
+        return samples[(next - 1 - age + samples.length * 2) % samples.length];
+    }
+
+    public double getMin() {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, samples[i]);
+        }
+        return count == 0 ? 0 : min;
+    }
+
+    public double getMax() {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return count == 0 ? 0 : max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+}
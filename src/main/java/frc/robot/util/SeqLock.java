@@ -0,0 +1,100 @@
+package frc.robot.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed set of doubles that one thread publishes together and any thread
+ * can read as a consistent set without locking or allocating.
+ *
+ * <p>
+ * A sequence number is odd while a write is in progress. Readers take the
+ * sequence from {@link #readBegin()}, read the values, and retry if
+ * {@link #readRetry(int)} says a write got in the way:
+ *
+ * <pre>
+ * int s;
+ * do {
+ *     s = lock.readBegin();
+ *     a = lock.get(0);
+ *     b = lock.get(1);
+ * } while (lock.readRetry(s));
+ * </pre>
+ *
+ * Writers must not overlap, so more than one writing thread has to be
+ * synchronized outside this class. The sequence number doubles as a version,
+ * which changes with every write.
+ */
+public class SeqLock {
+    private volatile int sequence;
+    // Atomic so the values are ordered with the sequence number
+    private final AtomicLongArray values;
+
+    public SeqLock(final int size) {
+        values = new AtomicLongArray(size);
+    }
+
+    public void beginWrite() {
+        sequence++;
+    }
+
+    public void set(final int index, final double value) {
+        values.set(index, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * @return The version of the values just written.
+     */
+    public int endWrite() {
+        final int s = sequence + 1;
+        sequence = s;
+        return s;
+    }
+
+    /**
+     * Wait for any write in progress to finish.
+     *
+     * @return The version to pass to {@link #readRetry(int)}.
+     */
+    public int readBegin() {
+        int s;
+        do {
+            s = sequence;
+        } while ((s & 1) != 0);
+        return s;
+    }
+
+    /**
+     * @param version The version from {@link #readBegin()}.
+     * @return Whether the values were written while reading, and have to be read
+     *         again.
+     */
+    public boolean readRetry(final int version) {
+        return sequence != version;
+    }
+
+    /**
+     * Read a single value. Values read between {@link #readBegin()} and
+     * {@link #readRetry(int)} are only consistent with each other if no retry
+     * is needed.
+     */
+    public double get(final int index) {
+        return Double.longBitsToDouble(values.get(index));
+    }
+
+    /**
+     * Read every value at once.
+     *
+     * @param out An array of at least as many elements as the lock holds.
+     * @return The version of the values read.
+     */
+    public int read(final double[] out) {
+        int s;
+        do {
+            s = readBegin();
+            for (int i = 0; i < values.length(); i++) {
+                out[i] = get(i);
+            }
+        } while (readRetry(s));
+        return s;
+    }
+}
@@ -0,0 +1,74 @@
+package frc.robot.util;
+
+/**
+ * A ring buffer of timestamped samples that can be queried for the value at
+ * any time it covers, interpolating between the two nearest samples. Storage is
+ * preallocated primitive arrays, so recording never allocates.
+ */
+public class TimeHistory {
+    private final double[] times;
+    private final double[] values;
+    private int next;
+    private int count;
+
+    public TimeHistory(final int capacity) {
+        times = new double[capacity];
+        values = new double[capacity];
+    }
+
+    /**
+     * Record a sample. Samples must be added in time order.
+     */
+    public synchronized void add(final double time, final double value) {
+        times[next] = time;
+        values[next] = value;
+        next = (next + 1) % times.length;
+        if (count < times.length) {
+            count++;
+        }
+    }
+
+    public synchronized void clear() {
+        next = 0;
+        count = 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    private int index(final int age) {
+        return (next - 1 - age + times.length) % times.length;
+    }
+
+    /**
+     * Get the value at a point in time. Times outside the recorded range return
+     * the oldest or newest sample.
+     *
+     * @param time The timestamp in the same units the samples were added with.
+     * @return The interpolated value, or 0 if nothing has been recorded.
+     */
+    public synchronized double getAt(final double time) {
+        if (count == 0) {
+            return 0;
+        }
+        final int newest = index(0);
+        if (time >= times[newest]) {
+            return values[newest];
+        }
+        // Walk back from the newest sample, since queries are usually recent
+        for (int age = 1; age < count; age++) {
+            final int older = index(age);
+            if (times[older] <= time) {
+                final int newer = index(age - 1);
+                final double span = times[newer] - times[older];
+                if (span <= 0) {
+                    return values[newer];
+                }
+                final double fraction = (time - times[older]) / span;
+                return values[older] + (values[newer] - values[older]) * fraction;
+            }
+        }
+        return values[index(count - 1)];
+    }
+}
@@ -0,0 +1,98 @@
+package frc.robot.util;
+
+/**
+ * A one dimensional move from a start position and velocity to a goal at rest,
+ * accelerating at a constant rate up to a maximum velocity, cruising, then
+ * decelerating at the same rate. Short moves never reach the maximum velocity
+ * and have a triangular velocity profile instead.
+ */
+public class TrapezoidProfile {
+    public final static int POSITION = 0;
+    public final static int VELOCITY = 1;
+    public final static int ACCELERATION = 2;
+
+    private final double direction;
+    private final double start;
+    private final double initialVelocity;
+    private final double maxVelocity;
+    private final double acceleration;
+    private final double distance;
+
+    private final double endAccel;
+    private final double endFullSpeed;
+    private final double endDecel;
+
+    /**
+     * @param maxVelocity     The cruising speed, in position units per second.
+     * @param maxAcceleration The acceleration and deceleration rate.
+     * @param start           The position to start from.
+     * @param startVelocity   The velocity at the start.
+     * @param goal            The position to stop at.
+     */
+    public TrapezoidProfile(final double maxVelocity, final double maxAcceleration, final double start,
+            final double startVelocity, final double goal) {
+        // Everything is worked out as if moving in the positive direction
+        direction = goal < start ? -1 : 1;
+        this.start = start;
+        this.initialVelocity = direction * startVelocity;
+        this.maxVelocity = maxVelocity;
+        this.acceleration = maxAcceleration;
+        distance = direction * (goal - start);
+
+        // Treat the start velocity as part of a profile that started from rest
+        // before the real start
+        final double cutoffBegin = initialVelocity / acceleration;
+        final double cutoffDistBegin = cutoffBegin * cutoffBegin * acceleration / 2;
+        final double fullDistance = distance + cutoffDistBegin;
+
+        double accelTime = maxVelocity / acceleration;
+        double fullSpeedDist = fullDistance - accelTime * accelTime * acceleration;
+        if (fullSpeedDist < 0) {
+            accelTime = Math.sqrt(fullDistance / acceleration);
+            fullSpeedDist = 0;
+        }
+
+        endAccel = accelTime - cutoffBegin;
+        endFullSpeed = endAccel + fullSpeedDist / maxVelocity;
+        endDecel = endFullSpeed + accelTime;
+    }
+
+    public double getDuration() {
+        return endDecel;
+    }
+
+    /**
+     * Get the setpoint at a time since the profile started. Times past the end
+     * hold the goal at rest.
+     *
+     * @param t     Seconds since the start of the move.
+     * @param state An array of at least 3 elements to fill with the position,
+     *              velocity and acceleration.
+     */
+    public void sample(final double t, final double[] state) {
+        double position;
+        double velocity;
+        double accel;
+        if (t < endAccel) {
+            velocity = initialVelocity + t * acceleration;
+            position = (initialVelocity + t * acceleration / 2) * t;
+            accel = acceleration;
+        } else if (t < endFullSpeed) {
+            velocity = maxVelocity;
+            position = (initialVelocity + endAccel * acceleration / 2) * endAccel + maxVelocity * (t - endAccel);
+            accel = 0;
+        } else if (t <= endDecel) {
+            final double timeLeft = endDecel - t;
+            velocity = timeLeft * acceleration;
+            position = distance - timeLeft * timeLeft * acceleration / 2;
+            accel = -acceleration;
+        } else {
+            velocity = 0;
+            position = distance;
+            accel = 0;
+        }
+        state[POSITION] = start + direction * position;
+        state[VELOCITY] = direction * velocity;
+        state[ACCELERATION] = direction * accel;
+    }
+}
@@ -0,0 +1,38 @@
+package frc.robot.vision;
+
+/**
+ * One frame's worth of vision results. Instances are immutable, so a reader
+ * always sees the found flag and correction from the same frame.
+ */
+public final class VisionTarget {
+    public static final VisionTarget NONE = new VisionTarget(false, 0, Double.NEGATIVE_INFINITY, 0, 0);
+
+    public final boolean found;
+    // Horizontal offset of the target from the image center, from -1 to 1
+    public final double correction;
+    // FPGA time in seconds when the frame was captured
+    public final double timestamp;
+    // Gyro heading in degrees when the frame was captured
+    public final double heading;
+    public final long sequence;
+
+    public VisionTarget(final boolean found, final double correction, final double timestamp, final double heading,
+            final long sequence) {
+        this.found = found;
+        this.correction = correction;
+        this.timestamp = timestamp;
+        this.heading = heading;
+        this.sequence = sequence;
+    }
+
+    public double getAge(final double now) {
+        return now - timestamp;
+    }
+
+    /**
+     * Whether this frame found a target and is recent enough to steer on.
+     */
+    public boolean isUsable(final double now, final double maxAge) {
+        return found && getAge(now) <= maxAge;
+    }
+}
@@ -0,0 +1,41 @@
+package frc.robot.vision;
+
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.EntryNotification;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.drive.Odometry;
+
+/**
+ * Keeps the latest vision target, fed by a NetworkTables listener instead of
+ * being polled. The coprocessor publishes each frame as one array entry of
+ * found, correction, seconds since capture and frame number, which is turned
+ * into a single snapshot that control code can read without locks. The frame's
+ * age is used to look up the heading the robot had when it was captured.
+ */
+public class VisionTargetCache {
+    private final static String TARGET_KEY = "Vision Target";
+
+    private final Odometry odometry;
+    private volatile VisionTarget latest = VisionTarget.NONE;
+
+    public VisionTargetCache(final NetworkTable table, final Odometry odometry) {
+        this.odometry = odometry;
+        table.getEntry(TARGET_KEY).addListener(this::update,
+                EntryListenerFlags.kNew | EntryListenerFlags.kUpdate | EntryListenerFlags.kImmediate);
+    }
+
+    private void update(final EntryNotification notification) {
+        final double[] values = notification.value.getDoubleArray();
+        if (values.length < 4) {
+            return;
+        }
+        final double captureTime = Timer.getFPGATimestamp() - values[2];
+        latest = new VisionTarget(values[0] != 0, values[1], captureTime, odometry.getHeadingAt(captureTime),
+                (long) values[3]);
+    }
+
+    public VisionTarget get() {
+        return latest;
+    }
+}
@@ -0,0 +1,137 @@
+package com.mach.LightDrive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the output path allocates nothing once it's warmed up.
+ *
+ * <p>
+ * Receive() is covered while the status stays the same. When it changes a new
+ * RxPacket and Status are allocated on purpose, since other threads hold on
+ * to the snapshots. On the robot the CAN receive call also returns a new array
+ * every time, which this can't cover.
+ */
+public class LightDriveCANTest {
+    private final static int WARMUP_CALLS = 20000;
+    private final static int MEASURED_CALLS = 10000;
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    // Stands in for the CAN bus, with a clock that moves a millisecond per call
+    private static class FakeLink implements CanLink {
+        final byte[] status = new byte[8];
+        long time;
+        long sent;
+
+        @Override
+        public long GetTime() {
+            time += 1000;
+            return time;
+        }
+
+        @Override
+        public void Send(final int id, final byte[] data, final int period) {
+            sent++;
+        }
+
+        @Override
+        public byte[] Receive(final IntBuffer id, final int mask, final ByteBuffer timestamp) {
+            return status;
+        }
+    }
+
+    private FakeLink link;
+    private LightDriveCAN lightDrive;
+
+    @Before
+    public void setUp() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        link = new FakeLink();
+        lightDrive = new LightDriveCAN(0, link);
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Reading the counter can allocate by itself, so this is taken off every
+    // measurement
+    private long counterOverhead() {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            final long before = allocatedBytes();
+            overhead = Math.min(overhead, allocatedBytes() - before);
+        }
+        return overhead;
+    }
+
+    private void update(final int calls) {
+        for (int i = 0; i < calls; i++) {
+            lightDrive.SetColor(1 + (i & 3), i * 0x010203);
+            lightDrive.Update();
+        }
+    }
+
+    // One bus cycle per update, so every cycle has a changed frame to send
+    private void cycle(final int calls) {
+        for (int i = 0; i < calls; i++) {
+            lightDrive.SetColor(1 + (i & 3), i * 0x010203);
+            lightDrive.Update();
+            lightDrive.Transmit();
+            lightDrive.Receive();
+        }
+    }
+
+    @Test
+    public void updateDoesNotAllocateAfterWarmup() {
+        update(WARMUP_CALLS);
+        final long overhead = counterOverhead();
+
+        final long before = allocatedBytes();
+        update(MEASURED_CALLS);
+        final long allocated = allocatedBytes() - before - overhead;
+        assertEquals("Bytes allocated by " + MEASURED_CALLS + " updates", 0, allocated);
+    }
+
+    @Test
+    public void busCycleDoesNotAllocateAfterWarmup() {
+        cycle(WARMUP_CALLS);
+        final long overhead = counterOverhead();
+
+        final long sentBefore = link.sent;
+        final long before = allocatedBytes();
+        cycle(MEASURED_CALLS);
+        final long allocated = allocatedBytes() - before - overhead;
+        assertEquals("Bytes allocated by " + MEASURED_CALLS + " bus cycles", 0, allocated);
+        // Every cycle changes at least one frame, so make sure they really went out
+        // rather than being suppressed
+        assertTrue(link.sent - sentBefore >= MEASURED_CALLS);
+    }
+
+    @Test
+    public void receiveOnlyReplacesTheSnapshotWhenTheStatusChanges() {
+        link.status[4] = 120;
+        lightDrive.Receive();
+        final RxPacket first = lightDrive.GetSnapshot();
+        lightDrive.Receive();
+        assertSame(first, lightDrive.GetSnapshot());
+
+        link.status[4] = 121;
+        lightDrive.Receive();
+        assertNotSame(first, lightDrive.GetSnapshot());
+        assertEquals(12.1f, lightDrive.GetVoltage(), 1e-6f);
+    }
+}